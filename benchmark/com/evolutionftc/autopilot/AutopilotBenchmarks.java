@@ -0,0 +1,38 @@
+package com.evolutionftc.autopilot;
+
+
+// Copyright (c) 2016-2020 Aedan Cullen and/or Evolution Robotics.
+
+
+// Runs every autopilot benchmark with the GC profiler, so each result carries
+// ns/op alongside gc.alloc.rate.norm (bytes allocated per op).
+//
+// This source root is built on the desktop, separately from the robot code: put it, desktop/
+// and the main autopilot sources on one source path, with JMH (jmh-core, plus
+// jmh-generator-annprocess as the annotation processor), the FTC SDK jars (RobotCore, Hardware)
+// and android.jar on the classpath. Only Context and Log come from android.jar, and no benchmark calls into either.
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+public class AutopilotBenchmarks {
+
+    public static void main(String[] args) throws RunnerException {
+        String include = "com\\.evolutionftc\\.autopilot\\..*Benchmark";
+        if (args.length > 0) {
+            include = args[0];
+        }
+
+        Options options = new OptionsBuilder()
+                .include(include)
+                .addProfiler(GCProfiler.class)
+                .forks(1)
+                .build();
+
+        new Runner(options).run();
+    }
+
+}
@@ -0,0 +1,53 @@
+package com.evolutionftc.autopilot;
+
+
+// Copyright (c) 2016-2020 Aedan Cullen and/or Evolution Robotics.
+
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AutopilotHostBenchmark {
+
+    @Param({"false", "true"})
+    public boolean velocityPID;
+
+    private AutopilotHost host;
+    private AutopilotTrackerTripleOdo tracker;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        host = new AutopilotHost(new AutopilotSimTelemetry());
+        host.setCountsToStable(10);
+        host.setNavigationUnitsToStable(0.5);
+        host.setOrientationUnitsToStable(0.05);
+        if (velocityPID) {
+            host.setupVelocityPID(0.1, 0.01, 0, 60);
+        }
+
+        // Pose stays put and the target is far away, so the host never leaves RUNNING
+        tracker = new AutopilotTrackerTripleOdo(new AutopilotSimMotor(), new AutopilotSimMotor(), new AutopilotSimMotor(), 4, 7, 1000);
+        host.communicate(tracker);
+
+        host.setNavigationTarget(new double[] {1000, 1000, 0}, 1.0, 0.05, 1.0, 0.8, 0.1, 0.5, true, true, true, false);
+        host.setNavigationStatus(AutopilotHost.NavigationStatus.RUNNING);
+    }
+
+    @Benchmark
+    public double[] navigationTick() {
+        return host.navigationTick(0.1);
+    }
+
+}
@@ -0,0 +1,51 @@
+package com.evolutionftc.autopilot;
+
+
+// Copyright (c) 2016-2020 Aedan Cullen and/or Evolution Robotics.
+
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AutopilotPathBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int nSegments;
+
+    private byte[] csv;
+    private AutopilotSimTelemetry telemetry = new AutopilotSimTelemetry();
+
+    @Setup
+    public void setup() {
+        csv = BenchmarkPaths.ringCsv(nSegments);
+    }
+
+    @Benchmark
+    public AutopilotPath load() {
+        return new AutopilotPath("benchmark", telemetry, new ByteArrayInputStream(csv));
+    }
+
+    @Benchmark
+    public AutopilotSegment loadAndWalk() {
+        // Loading plus one full lap of transitions, which is where segment lookup shows up
+        AutopilotPath path = new AutopilotPath("benchmark", telemetry, new ByteArrayInputStream(csv));
+        AutopilotSegment segment = path.moveOnSuccess();
+        for (int i = 1; i < nSegments; i++) {
+            segment = path.moveOnSuccess();
+        }
+        return segment;
+    }
+
+}
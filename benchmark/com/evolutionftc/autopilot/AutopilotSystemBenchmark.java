@@ -0,0 +1,65 @@
+package com.evolutionftc.autopilot;
+
+
+// Copyright (c) 2016-2020 Aedan Cullen and/or Evolution Robotics.
+
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AutopilotSystemBenchmark {
+
+    @Param({"TripleOdo", "DualOdo"})
+    public String trackerType;
+
+    @Param({"1000"})
+    public int nSegments;
+
+    private AutopilotSystem system;
+
+    private AutopilotSimMotor[] motors = new AutopilotSimMotor[4];
+    private AutopilotSimIMU imu = new AutopilotSimIMU();
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        AutopilotSimTelemetry telemetry = new AutopilotSimTelemetry();
+        AutopilotTracker tracker = AutopilotTrackerBenchmark.buildTracker(trackerType, 10, motors, imu);
+
+        system = new AutopilotSystem(tracker, telemetry, null, false) {
+            @Override
+            public void onSegmentTransition(AutopilotSegment previous, AutopilotSegment next, boolean wasOkayToContinue) {
+                // What an OpMode typically does, since the CSV leaves these unset
+                if (next != null) {
+                    next.useTranslation = true;
+                    next.fullStop = false;
+                }
+            }
+        };
+        system.host.setCountsToStable(10);
+        system.host.setNavigationUnitsToStable(0.5);
+        system.host.setOrientationUnitsToStable(0.05);
+
+        byte[] csv = BenchmarkPaths.ringCsv(nSegments);
+        system.beginPathTravel(new AutopilotPath("benchmark", telemetry, new ByteArrayInputStream(csv)));
+    }
+
+    @Benchmark
+    public double[] systemTick() {
+        AutopilotTrackerBenchmark.advance(motors, imu);
+        return system.systemTick();
+    }
+
+}
@@ -0,0 +1,84 @@
+package com.evolutionftc.autopilot;
+
+
+// Copyright (c) 2016-2020 Aedan Cullen and/or Evolution Robotics.
+
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AutopilotTrackerBenchmark {
+
+    @Param({"TripleOdo", "QuadOdo", "QuadFullOdo", "DualOdo", "Enc", "QP37i"})
+    public String trackerType;
+
+    @Param({"10"})
+    public int nSubsteps;
+
+    private AutopilotTracker tracker;
+
+    private AutopilotSimMotor[] motors = new AutopilotSimMotor[4];
+    private AutopilotSimIMU imu = new AutopilotSimIMU();
+
+    // Different steps per encoder so every tracker sees both translation and rotation
+    private static final int[] TICKS_PER_UPDATE = {3, 4, 5, 7};
+    private static final double RADIANS_PER_UPDATE = 0.001;
+
+    static AutopilotTracker buildTracker(String trackerType, int nSubsteps, AutopilotSimMotor[] motors, AutopilotSimIMU imu) {
+        for (int i = 0; i < motors.length; i++) {
+            motors[i] = new AutopilotSimMotor("encoder" + i);
+        }
+        if (trackerType.equals("TripleOdo")) {
+            return new AutopilotTrackerTripleOdo(motors[0], motors[2], motors[3], 4, 7, 1, 1, 1000);
+        }
+        if (trackerType.equals("QuadOdo")) {
+            return new AutopilotTrackerQuadOdo(motors[0], motors[1], motors[2], motors[3], 4, 7, 1, 1, 1000);
+        }
+        if (trackerType.equals("QuadFullOdo")) {
+            return new AutopilotTrackerQuadFullOdo(motors[0], motors[1], motors[2], motors[3], 4, 7, 1, 1, 1000);
+        }
+        if (trackerType.equals("DualOdo")) {
+            return new AutopilotTrackerDualOdo(motors[0], motors[2], 4, 7, 1000, imu);
+        }
+        if (trackerType.equals("Enc")) {
+            return new AutopilotTrackerEnc(motors[2], motors[3], 1000, imu, nSubsteps);
+        }
+        if (trackerType.equals("QP37i")) {
+            return new AutopilotTrackerQP37i(motors[0], motors[2], new double[] {2, 3, 0}, 1000, imu, nSubsteps);
+        }
+        throw new IllegalArgumentException("Unknown tracker type: " + trackerType);
+    }
+
+    // Move every encoder and the IMU by one step, so no update ever sees a zero delta
+    static void advance(AutopilotSimMotor[] motors, AutopilotSimIMU imu) {
+        for (int i = 0; i < motors.length; i++) {
+            motors[i].addTicks(TICKS_PER_UPDATE[i]);
+        }
+        imu.setHeading(imu.getHeading() + RADIANS_PER_UPDATE);
+    }
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        tracker = buildTracker(trackerType, nSubsteps, motors, imu);
+    }
+
+    @Benchmark
+    public double[] update() {
+        advance(motors, imu);
+        tracker.update();
+        return tracker.getRobotPosition();
+    }
+
+}
@@ -0,0 +1,45 @@
+package com.evolutionftc.autopilot;
+
+
+// Copyright (c) 2016-2020 Aedan Cullen and/or Evolution Robotics.
+
+
+// Generated path files for the benchmarks.
+// Segments form a ring on success (so a system benchmark never runs out of path),
+// with every segment falling back to __end__ on failure.
+
+import java.nio.charset.Charset;
+
+public class BenchmarkPaths {
+
+    public static final String HEADER = "id,success,fail,targetx,targety,targeth,xygain,hgain,xymax,xymin,hmax,useh";
+
+    public static String segmentId(int i) {
+        if (i == 0) {
+            return "__start__";
+        }
+        return "seg" + i;
+    }
+
+    public static byte[] ringCsv(int nSegments) {
+        StringBuilder csv = new StringBuilder(HEADER.length() + nSegments * 96);
+        csv.append(HEADER).append('\n');
+        for (int i = 0; i < nSegments; i++) {
+            double angle = (2 * Math.PI * i) / nSegments;
+            csv.append(segmentId(i)).append(',')
+               .append(segmentId((i + 1) % nSegments)).append(',')
+               .append("__end__").append(',')
+               .append(48 * Math.cos(angle)).append(',')
+               .append(48 * Math.sin(angle)).append(',')
+               .append(angle).append(',')
+               .append(0.05).append(',')
+               .append(1.0).append(',')
+               .append(0.8).append(',')
+               .append(0.1).append(',')
+               .append(0.5).append(',')
+               .append(i % 2 == 0).append('\n');
+        }
+        return csv.toString().getBytes(Charset.forName("UTF-8"));
+    }
+
+}
@@ -0,0 +1,29 @@
+package com.evolutionftc.autopilot;
+
+
+// Copyright (c) 2016-2020 Aedan Cullen and/or Evolution Robotics.
+
+
+// Time source for everything that measures time between ticks (the velocity PID, telemetry
+// and broadcast rate limits, the flight recorder). SYSTEM reads System.nanoTime(); an
+// AutopilotSimClock (in the desktop/ source root) is advanced by the simulator instead, so a
+// simulated routine sees the same time steps however fast it actually runs.
+//
+// Set one clock for the whole system with AutopilotSystem.setClock().
+
+public abstract class AutopilotClock {
+
+    public static final AutopilotClock SYSTEM = new AutopilotClock() {
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+    };
+
+    // Nanoseconds from an arbitrary origin; only differences are meaningful
+    public abstract long nanoTime();
+
+    public double seconds() {
+        return nanoTime() / 1e9;
+    }
+
+}
@@ -0,0 +1,252 @@
+package com.evolutionftc.autopilot;
+
+
+// Copyright (c) 2016-2020 Aedan Cullen and/or Evolution Robotics.
+
+
+// Streaming CSV reader for path files.
+// Numbers and booleans are parsed straight out of the character buffer, so nothing is
+// allocated per field; only readString() creates a String. Errors carry the line and
+// column of the field that failed.
+
+import java.io.IOException;
+import java.io.Reader;
+
+public class AutopilotCsvTokenizer {
+
+    private static final int BUFFER_SIZE = 8192;
+    private static final int MAX_TOKEN = 64;
+
+    // Powers of ten that are exact as doubles
+    private static final double[] EXACT_POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private Reader reader;
+    private char[] buffer = new char[BUFFER_SIZE];
+    private int bufferPos;
+    private int bufferEnd;
+
+    private char[] token = new char[MAX_TOKEN];
+    private int tokenLength;
+
+    private int line = 1;
+    private int column = 1;
+    private int fieldLine;
+    private int fieldColumn;
+
+    public AutopilotCsvTokenizer(Reader reader) {
+        this.reader = reader;
+    }
+
+    public int getLine() {
+        return line;
+    }
+
+    private int peek() throws IOException {
+        if (bufferPos == bufferEnd) {
+            bufferEnd = reader.read(buffer, 0, buffer.length);
+            bufferPos = 0;
+            if (bufferEnd <= 0) {
+                bufferEnd = 0;
+                return -1;
+            }
+        }
+        return buffer[bufferPos];
+    }
+
+    private void advance() {
+        bufferPos++;
+        column++;
+    }
+
+    private void skipBlanks() throws IOException {
+        int c = peek();
+        while (c == ' ' || c == '\t') {
+            advance();
+            c = peek();
+        }
+    }
+
+    public boolean atEndOfFile() throws IOException {
+        return peek() == -1;
+    }
+
+    public boolean atEndOfLine() throws IOException {
+        skipBlanks();
+        int c = peek();
+        return c == '\n' || c == '\r' || c == -1;
+    }
+
+    // Consume the rest of an empty line; false if the line had content
+    public boolean skipBlankLine() throws IOException {
+        if (atEndOfFile() || !atEndOfLine()) {
+            return false;
+        }
+        endLine();
+        return true;
+    }
+
+    public void endLine() throws IOException {
+        if (!atEndOfLine()) {
+            throw error("expected end of line");
+        }
+        int c = peek();
+        if (c == '\r') {
+            advance();
+            c = peek();
+        }
+        if (c == '\n') {
+            advance();
+        }
+        line++;
+        column = 1;
+    }
+
+    // Collect the current field into the token scratch and step over the following comma
+    private void readToken() throws IOException {
+        skipBlanks();
+        fieldLine = line;
+        fieldColumn = column;
+        tokenLength = 0;
+        int c = peek();
+        while (c != ',' && c != '\n' && c != '\r' && c != -1) {
+            if (tokenLength == token.length) {
+                char[] bigger = new char[token.length * 2];
+                System.arraycopy(token, 0, bigger, 0, tokenLength);
+                token = bigger;
+            }
+            token[tokenLength++] = (char)c;
+            advance();
+            c = peek();
+        }
+        while (tokenLength > 0 && (token[tokenLength - 1] == ' ' || token[tokenLength - 1] == '\t')) {
+            tokenLength--;
+        }
+        if (c == ',') {
+            advance();
+        }
+    }
+
+    public String readString() throws IOException {
+        readToken();
+        return new String(token, 0, tokenLength);
+    }
+
+    public boolean readBoolean() throws IOException {
+        readToken();
+        if (tokenIs("true") || tokenIs("1")) {
+            return true;
+        }
+        if (tokenIs("false") || tokenIs("0")) {
+            return false;
+        }
+        throw fieldError("expected true or false");
+    }
+
+    private boolean tokenIs(String word) {
+        if (tokenLength != word.length()) {
+            return false;
+        }
+        for (int i = 0; i < tokenLength; i++) {
+            if (Character.toLowerCase(token[i]) != word.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public double readDouble() throws IOException {
+        readToken();
+
+        int i = 0;
+        boolean negative = false;
+        if (i < tokenLength && (token[i] == '-' || token[i] == '+')) {
+            negative = token[i] == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int nSignificant = 0;
+        int exponent = 0;
+        boolean anyDigits = false;
+
+        while (i < tokenLength && token[i] >= '0' && token[i] <= '9') {
+            anyDigits = true;
+            if (nSignificant < 18) {
+                mantissa = (mantissa * 10) + (token[i] - '0');
+                if (mantissa != 0) {nSignificant++;}
+            }
+            else {
+                exponent++;
+                nSignificant++;
+            }
+            i++;
+        }
+        if (i < tokenLength && token[i] == '.') {
+            i++;
+            while (i < tokenLength && token[i] >= '0' && token[i] <= '9') {
+                anyDigits = true;
+                if (nSignificant < 18) {
+                    mantissa = (mantissa * 10) + (token[i] - '0');
+                    if (mantissa != 0) {nSignificant++;}
+                    exponent--;
+                }
+                else {
+                    nSignificant++;
+                }
+                i++;
+            }
+        }
+        if (!anyDigits) {
+            throw fieldError("expected a number");
+        }
+        if (i < tokenLength && (token[i] == 'e' || token[i] == 'E')) {
+            i++;
+            boolean negativeExponent = false;
+            if (i < tokenLength && (token[i] == '-' || token[i] == '+')) {
+                negativeExponent = token[i] == '-';
+                i++;
+            }
+            int explicitExponent = 0;
+            boolean anyExponentDigits = false;
+            while (i < tokenLength && token[i] >= '0' && token[i] <= '9') {
+                anyExponentDigits = true;
+                explicitExponent = Math.min(100000, (explicitExponent * 10) + (token[i] - '0'));
+                i++;
+            }
+            if (!anyExponentDigits) {
+                throw fieldError("expected a number");
+            }
+            exponent += negativeExponent ? -explicitExponent : explicitExponent;
+        }
+        if (i != tokenLength) {
+            throw fieldError("expected a number");
+        }
+
+        double value;
+        if (mantissa == 0) {
+            value = 0;
+        }
+        else if (nSignificant <= 15 && exponent >= -22 && exponent <= 22) {
+            // Both operands are exact, so one multiply or divide gives the correctly rounded result
+            value = (exponent >= 0) ? mantissa * EXACT_POWERS_OF_TEN[exponent] : mantissa / EXACT_POWERS_OF_TEN[-exponent];
+        }
+        else {
+            // Rare in path files; let the library handle the long or extreme cases exactly
+            value = Math.abs(Double.parseDouble(new String(token, 0, tokenLength)));
+        }
+        return negative ? -value : value;
+    }
+
+    public UnsupportedOperationException error(String message) {
+        return new UnsupportedOperationException("Path file line " + line + ", column " + column + ": " + message);
+    }
+
+    public UnsupportedOperationException fieldError(String message) {
+        return new UnsupportedOperationException("Path file line " + fieldLine + ", column " + fieldColumn + ": " + message +
+                ", found '" + new String(token, 0, tokenLength) + "'");
+    }
+
+}
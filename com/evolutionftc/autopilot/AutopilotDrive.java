@@ -0,0 +1,139 @@
+package com.evolutionftc.autopilot;
+
+
+// Copyright (c) 2016-2020 Aedan Cullen and/or Evolution Robotics.
+
+
+// Drive output stage: turns the [y, x, h] command from navigationTick / systemTick into wheel
+// powers and writes them to the motors.
+//
+// MECANUM and XDRIVE take four motors (front left, front right, back left, back right) and use
+// all three axes. Both mix the same way: in power space an X-drive's 45-degree wheels combine
+// like mecanum rollers, so a full-power command reaches full wheel power on either. TANK takes
+// a left and a right motor (or two of each) and ignores x, which suits diffMode segments.
+// If any wheel would exceed 1, all are scaled down together so the direction of travel is kept.
+// Motor directions should be set so positive power drives forward.
+//
+// Each setPower() is a transaction on the hub, so a motor is only written when its power has
+// moved by more than the threshold since its last write; going to zero is always written.
+
+import com.qualcomm.robotcore.hardware.DcMotor;
+
+public class AutopilotDrive {
+
+    public enum Type {MECANUM, XDRIVE, TANK};
+
+    private Type type;
+    private DcMotor[] motors;
+    // Which wheel power each motor takes (TANK with four motors doubles up)
+    private int[] wheelOf;
+
+    private double[] wheelPower = new double[4];
+    private double[] lastWritten;
+    private double threshold = 0.005;
+
+    private long nWrites;
+    private long nSkipped;
+
+    public AutopilotDrive(Type type, DcMotor frontLeft, DcMotor frontRight, DcMotor backLeft, DcMotor backRight) {
+        this.type = type;
+        this.motors = new DcMotor[] {frontLeft, frontRight, backLeft, backRight};
+        if (type == Type.TANK) {
+            this.wheelOf = new int[] {0, 1, 0, 1};
+        }
+        else {
+            this.wheelOf = new int[] {0, 1, 2, 3};
+        }
+        initLastWritten();
+    }
+
+    public AutopilotDrive(DcMotor left, DcMotor right) {
+        this.type = Type.TANK;
+        this.motors = new DcMotor[] {left, right};
+        this.wheelOf = new int[] {0, 1};
+        initLastWritten();
+    }
+
+    private void initLastWritten() {
+        lastWritten = new double[motors.length];
+        for (int i = 0; i < lastWritten.length; i++) {
+            // Nothing written yet, so the first drive() writes every motor
+            lastWritten[i] = Double.NaN;
+        }
+    }
+
+    // Smallest change in power worth a motor write (0 writes on every change)
+    public void setThreshold(double threshold) {
+        this.threshold = threshold;
+    }
+
+    public void drive(double[] yxh) {
+        double y = yxh[0];
+        double x = yxh[1];
+        double h = yxh[2];
+
+        int nWheels;
+        if (type == Type.TANK) {
+            wheelPower[0] = y - h;
+            wheelPower[1] = y + h;
+            nWheels = 2;
+        }
+        else {
+            wheelPower[0] = y + x - h;
+            wheelPower[1] = y - x + h;
+            wheelPower[2] = y - x - h;
+            wheelPower[3] = y + x + h;
+            nWheels = 4;
+        }
+
+        double largest = 1;
+        for (int i = 0; i < nWheels; i++) {
+            largest = Math.max(largest, Math.abs(wheelPower[i]));
+        }
+        for (int i = 0; i < nWheels; i++) {
+            wheelPower[i] /= largest;
+        }
+
+        for (int i = 0; i < motors.length; i++) {
+            write(i, wheelPower[wheelOf[i]]);
+        }
+    }
+
+    public void stop() {
+        for (int i = 0; i < motors.length; i++) {
+            write(i, 0);
+        }
+    }
+
+    private void write(int i, double power) {
+        double last = lastWritten[i];
+        boolean changed = Double.isNaN(last) || Math.abs(power - last) > threshold || (power == 0 && last != 0);
+        if (changed) {
+            motors[i].setPower(power);
+            lastWritten[i] = power;
+            nWrites++;
+        }
+        else {
+            nSkipped++;
+        }
+    }
+
+    // Power each motor was last set to, in constructor order
+    public double getPower(int motor) {
+        return lastWritten[motor];
+    }
+
+    public long getWriteCount() {
+        return nWrites;
+    }
+
+    public long getSkippedCount() {
+        return nSkipped;
+    }
+
+    // Call if something else has set the motor powers, so the next drive() writes them all again
+    public void invalidate() {
+        initLastWritten();
+    }
+
+}
@@ -0,0 +1,237 @@
+package com.evolutionftc.autopilot;
+
+
+// Copyright (c) 2016-2020 Aedan Cullen and/or Evolution Robotics.
+
+
+// Records what the system saw and did on every systemTick: raw encoder counts, raw IMU heading,
+// tracked pose, the navigationTick command, current segment index and navigation status.
+//
+// Everything lives in primitive arrays allocated up front, so record() costs a handful of array
+// stores and never allocates; it is meant to stay on in competition. Once full, the oldest
+// ticks are overwritten. Write the recording out after the match with writeTo(), and read it back
+// (for AutopilotReplay on the desktop, or gadgets/flightlog.py) with readFrom().
+//
+// File, big-endian: "APFR", int version, int nEncoders, int nTicks, then per tick:
+//   long nanoseconds since the first tick, long[nEncoders] counts, double heading,
+//   double x, y, h, double[3] command, int segment index, byte navigation status
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+public class AutopilotFlightRecorder {
+
+    public static final int MAX_ENCODERS = 4;
+
+    private static final int FILE_MAGIC = 0x41504652;
+    private static final int FILE_VERSION = 1;
+
+    private final int capacity;
+
+    private final long[] time;
+    private final long[] encoders;
+    private final double[] heading;
+    private final double[] pose;
+    private final double[] command;
+    private final int[] segmentIndex;
+    private final byte[] status;
+
+    private long nRecorded;
+    private int nEncoders;
+    private long nsAtFirstTick;
+    private long[] encoderScratch = new long[MAX_ENCODERS];
+    private AutopilotClock clock = AutopilotClock.SYSTEM;
+
+    public AutopilotFlightRecorder(int capacity) {
+        this.capacity = capacity;
+        this.time = new long[capacity];
+        this.encoders = new long[capacity * MAX_ENCODERS];
+        this.heading = new double[capacity];
+        this.pose = new double[capacity * 3];
+        this.command = new double[capacity * 3];
+        this.segmentIndex = new int[capacity];
+        this.status = new byte[capacity];
+    }
+
+    // Time source for the tick timestamps
+    public void setClock(AutopilotClock clock) {
+        this.clock = clock;
+    }
+
+    public void record(AutopilotTracker tracker, AutopilotHost host, double[] navigationCommand, int currentSegmentIndex) {
+        long timeNow = clock.nanoTime();
+        if (nRecorded == 0) {
+            nsAtFirstTick = timeNow;
+        }
+        int slot = (int)(nRecorded % capacity);
+
+        int n = tracker.getRawEncoders(encoderScratch);
+        nEncoders = n;
+        int encoderBase = slot * MAX_ENCODERS;
+        for (int i = 0; i < n; i++) {
+            encoders[encoderBase + i] = encoderScratch[i];
+        }
+
+        double[] robotPosition = host.getRobotPosition();
+        double[] robotAttitude = host.getRobotAttitude();
+        int base = slot * 3;
+        pose[base] = robotPosition[0];
+        pose[base + 1] = robotPosition[1];
+        pose[base + 2] = robotAttitude[0];
+        command[base] = navigationCommand[0];
+        command[base + 1] = navigationCommand[1];
+        command[base + 2] = navigationCommand[2];
+
+        time[slot] = timeNow - nsAtFirstTick;
+        heading[slot] = tracker.getRawHeading();
+        segmentIndex[slot] = currentSegmentIndex;
+        status[slot] = (byte)host.getNavigationStatus().ordinal();
+        nRecorded++;
+    }
+
+    public void clear() {
+        nRecorded = 0;
+    }
+
+    // Number of ticks held, oldest first at index 0
+    public int size() {
+        return (int)Math.min(nRecorded, capacity);
+    }
+
+    public int getEncoderCount() {
+        return nEncoders;
+    }
+
+    private int slot(int i) {
+        if (i < 0 || i >= size()) {
+            throw new IndexOutOfBoundsException("Tick " + i + " not in recording of " + size());
+        }
+        long oldest = (nRecorded > capacity) ? nRecorded - capacity : 0;
+        return (int)((oldest + i) % capacity);
+    }
+
+    public long getTime(int i) {
+        return time[slot(i)];
+    }
+
+    public long getEncoder(int i, int encoder) {
+        return encoders[(slot(i) * MAX_ENCODERS) + encoder];
+    }
+
+    public double getRawHeading(int i) {
+        return heading[slot(i)];
+    }
+
+    // 0, 1, 2 are x, y, h
+    public double getPose(int i, int axis) {
+        return pose[(slot(i) * 3) + axis];
+    }
+
+    public double getCommand(int i, int axis) {
+        return command[(slot(i) * 3) + axis];
+    }
+
+    public int getSegmentIndex(int i) {
+        return segmentIndex[slot(i)];
+    }
+
+    public AutopilotHost.NavigationStatus getNavigationStatus(int i) {
+        return AutopilotHost.NavigationStatus.values()[status[slot(i)]];
+    }
+
+    public void writeTo(File file) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        try {
+            writeTo(out);
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out, 65536));
+        int n = size();
+        data.writeInt(FILE_MAGIC);
+        data.writeInt(FILE_VERSION);
+        data.writeInt(nEncoders);
+        data.writeInt(n);
+        for (int i = 0; i < n; i++) {
+            int slot = slot(i);
+            data.writeLong(time[slot]);
+            for (int j = 0; j < nEncoders; j++) {
+                data.writeLong(encoders[(slot * MAX_ENCODERS) + j]);
+            }
+            data.writeDouble(heading[slot]);
+            for (int j = 0; j < 3; j++) {
+                data.writeDouble(pose[(slot * 3) + j]);
+            }
+            for (int j = 0; j < 3; j++) {
+                data.writeDouble(command[(slot * 3) + j]);
+            }
+            data.writeInt(segmentIndex[slot]);
+            data.writeByte(status[slot]);
+        }
+        data.flush();
+    }
+
+    public static AutopilotFlightRecorder readFrom(File file) {
+        try {
+            InputStream in = new FileInputStream(file);
+            try {
+                return readFrom(in);
+            }
+            finally {
+                in.close();
+            }
+        }
+        catch (IOException e) {
+            throw new IllegalStateException("Error loading flight recording: " + e.getMessage());
+        }
+    }
+
+    public static AutopilotFlightRecorder readFrom(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in, 65536));
+        if (data.readInt() != FILE_MAGIC) {
+            throw new UnsupportedOperationException("Not a flight recording");
+        }
+        int version = data.readInt();
+        if (version != FILE_VERSION) {
+            throw new UnsupportedOperationException("Flight recording is version " + version + ", expected " + FILE_VERSION);
+        }
+        int nEncoders = data.readInt();
+        int n = data.readInt();
+        if (nEncoders < 0 || nEncoders > MAX_ENCODERS || n < 0) {
+            throw new UnsupportedOperationException("Flight recording header is corrupt");
+        }
+
+        AutopilotFlightRecorder recorder = new AutopilotFlightRecorder(Math.max(n, 1));
+        recorder.nEncoders = nEncoders;
+        for (int i = 0; i < n; i++) {
+            recorder.time[i] = data.readLong();
+            for (int j = 0; j < nEncoders; j++) {
+                recorder.encoders[(i * MAX_ENCODERS) + j] = data.readLong();
+            }
+            recorder.heading[i] = data.readDouble();
+            for (int j = 0; j < 3; j++) {
+                recorder.pose[(i * 3) + j] = data.readDouble();
+            }
+            for (int j = 0; j < 3; j++) {
+                recorder.command[(i * 3) + j] = data.readDouble();
+            }
+            recorder.segmentIndex[i] = data.readInt();
+            recorder.status[i] = data.readByte();
+        }
+        recorder.nRecorded = n;
+        return recorder;
+    }
+
+}
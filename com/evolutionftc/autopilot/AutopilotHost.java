@@ -41,6 +41,12 @@ public class AutopilotHost {
 
     PIDVelocityAdjuster chosenPowerAdjuster;
 
+    AutopilotClock clock = AutopilotClock.SYSTEM;
+
+    AutopilotMotionProfile motionProfile;
+
+    AutopilotPurePursuit pursuit;
+
     private double[] robotAttitude = new double[3];
 
     private double[] robotPosition = new double[3];
@@ -54,6 +60,54 @@ public class AutopilotHost {
 
     public void setupVelocityPID(double Kp, double Ki, double Kd, double actualPeakRate) {
         chosenPowerAdjuster = new PIDVelocityAdjuster(Kp, Ki, Kd, actualPeakRate);
+        chosenPowerAdjuster.setClock(clock);
+    }
+
+    // Feedforward (kStatic + kV * velocity + kA * acceleration, see FeedforwardVelocityAdjuster) with the PID
+    // correcting what it misses; constants from FeedforwardVelocityAdjuster.characterize()
+    public void setupVelocityPID(double Kp, double Ki, double Kd, double actualPeakRate, double kStatic, double kV, double kA) {
+        chosenPowerAdjuster = new FeedforwardVelocityAdjuster(kStatic, kV, kA, Kp, Ki, Kd, actualPeakRate);
+        chosenPowerAdjuster.setClock(clock);
+    }
+
+    // Time source for the velocity PID when no tick interval is given
+    public void setClock(AutopilotClock clock) {
+        this.clock = clock;
+        if (chosenPowerAdjuster != null) {
+            chosenPowerAdjuster.setClock(clock);
+        }
+    }
+
+    // Seconds since the previous navigationTick, when the loop runs at a known rate (0 if not known).
+    // The velocity PID then uses it instead of timing itself.
+    public void setTickInterval(double tickSeconds) {
+        this.tickSeconds = tickSeconds;
+    }
+
+    // With a known tick interval, a fullstop segment must stay stable this long instead of countsToStable ticks
+    public void setTimeToStable(double timeToStable) {
+        this.timeToStable = timeToStable;
+    }
+
+    // Set power from a motion profile over each segment instead of distance * navigationGain (null to go back)
+    public void setMotionProfile(AutopilotMotionProfile motionProfile) {
+        this.motionProfile = motionProfile;
+    }
+
+    // Follow a pure-pursuit path from the current position instead of the segment target.
+    // Gains, limits and diffMode stay as set by the last setNavigationTarget, which also ends the pursuit.
+    public void setPursuit(AutopilotPurePursuit pursuit) {
+        this.pursuit = pursuit;
+        if (pursuit != null) {
+            pursuit.begin(robotPosition, robotAttitude[0]);
+            nTimesStable = 0;
+            timeStable = 0;
+            setNavigationStatus(NavigationStatus.RUNNING);
+        }
+    }
+
+    public AutopilotPurePursuit getPursuit() {
+        return pursuit;
     }
 
     public void setCountsToStable(int countsToStable) {
@@ -84,20 +138,59 @@ public class AutopilotHost {
         this.navigationTargetInverts = navigationTargetInverts;
     }
 
+    // Rebuilt only when a displayed value changes, and into the same StringBuilder every time
+    private StringBuilder telemetryText = new StringBuilder(256);
+    private String telemetryValue;
+    private NavigationStatus telemetryStatus;
+    private long[] telemetryHundredths = new long[9];
+
     public void telemetryUpdate() {
-        telemetry.addData("* AutopilotHost", "\n" +
-        "\t status:  " + navigationStatus.toString().toLowerCase() + "\n" +
-        "\t target:  " + round(navigationTarget[0]) + ",  " + round(navigationTarget[1]) + ",  " + round(navigationTarget[2]) + "\n" +
-        "\t position:  " + round(robotPosition[0]) + ",  " + round(robotPosition[1]) + ",  " + round(robotPosition[2]) + "\n" +
-        "\t attitude:  " + round(robotAttitude[0]) + ",  " + round(robotAttitude[1]) + ",  " + round(robotAttitude[2]));
+        boolean changed = telemetryValue == null || telemetryStatus != navigationStatus;
+        for (int i = 0; i < 3; i++) {
+            changed |= updateHundredths(i, navigationTarget[i]);
+            changed |= updateHundredths(3 + i, robotPosition[i]);
+            changed |= updateHundredths(6 + i, robotAttitude[i]);
+        }
+
+        if (changed) {
+            telemetryStatus = navigationStatus;
+            telemetryText.setLength(0);
+            telemetryText.append("\n\t status:  ").append(STATUS_NAMES[navigationStatus.ordinal()]);
+            appendTelemetryTriple("\n\t target:  ", 0);
+            appendTelemetryTriple("\n\t position:  ", 3);
+            appendTelemetryTriple("\n\t attitude:  ", 6);
+            telemetryValue = telemetryText.toString();
+        }
+
+        telemetry.addData("* AutopilotHost", telemetryValue);
         //telemetry.update();
     }
 
+    private static final String[] STATUS_NAMES = {"running", "stopped"};
+
+    private boolean updateHundredths(int i, double value) {
+        long hundredths = AutopilotTelemetryScheduler.hundredths(value);
+        if (hundredths == telemetryHundredths[i]) {
+            return false;
+        }
+        telemetryHundredths[i] = hundredths;
+        return true;
+    }
+
+    private void appendTelemetryTriple(String label, int first) {
+        telemetryText.append(label);
+        AutopilotTelemetryScheduler.appendHundredths(telemetryText, telemetryHundredths[first]);
+        telemetryText.append(",  ");
+        AutopilotTelemetryScheduler.appendHundredths(telemetryText, telemetryHundredths[first + 1]);
+        telemetryText.append(",  ");
+        AutopilotTelemetryScheduler.appendHundredths(telemetryText, telemetryHundredths[first + 2]);
+    }
+
     public void communicate(AutopilotTracker tracker) {
         tracker.update();
 
-        robotAttitude = tracker.getRobotAttitude();
-        robotPosition = tracker.getRobotPosition();
+        tracker.getRobotAttitude(robotAttitude);
+        tracker.getRobotPosition(robotPosition);
     }
 
     public NavigationStatus getNavigationStatus() {
@@ -156,7 +249,8 @@ public class AutopilotHost {
             boolean diffMode)
     {
 
-        this.navigationTarget = navigationTarget;
+        // Copied so the inverts below never touch the caller's (the segment's) array
+        System.arraycopy(navigationTarget, 0, this.navigationTarget, 0, 3);
         this.orientationTarget = orientationTarget;
         this.navigationGain = navigationGain;
         this.orientationGain = orientationGain;
@@ -167,6 +261,7 @@ public class AutopilotHost {
         this.useTranslation = useTranslation;
         this.fullStop = fullStop;
         this.diffMode = diffMode;
+        this.pursuit = null;
 
         if (this.navigationTargetInverts != null) {
             this.applyNavigationTargetInverts();
@@ -177,11 +272,15 @@ public class AutopilotHost {
         }
 
         // only linear-rotation reset here
-        double xErr = navigationTarget[0] - robotPosition[0];
-        double yErr = navigationTarget[1] - robotPosition[1];
+        double xErr = this.navigationTarget[0] - robotPosition[0];
+        double yErr = this.navigationTarget[1] - robotPosition[1];
         double distance = Math.sqrt(Math.pow(xErr, 2) + Math.pow(yErr, 2));
         initialDistance = distance;
         initialOrientation = robotAttitude[0];
+
+        if (motionProfile != null) {
+            motionProfile.build(distance, navigationMax, fullStop);
+        }
         
         lastDistanceToTarget = -1;
         distanceDecreased = false;
@@ -206,11 +305,6 @@ public class AutopilotHost {
         return (Math.abs(param2 - param1) < threshold);
     }
 
-    private static double round(double in) {
-        double roundOff = (double) Math.round(in * 100) / 100;
-        return roundOff;
-    }
-
     double initialDistance;
     double initialOrientation;
     
@@ -224,17 +318,17 @@ public class AutopilotHost {
         lastDistanceToTarget = distanceToTarget;
     }
 
-    private double[] applyDiff(double[] yxh) {
-        double[] output = new double[3];
-        output[0] = yxh[0];
+    // In place
+    private void applyDiff(double[] yxh) {
+        double turn;
         if (yxh[0] > 0) {
-            output[2] = -yxh[1];
+            turn = -yxh[1];
         }
         else {
-            output[2] = yxh[1];
+            turn = yxh[1];
         }
-        output[2] *= orientationGain * (Math.PI / 2);
-        return output;
+        yxh[1] = 0;
+        yxh[2] = turn * orientationGain * (Math.PI / 2);
     }
 
     public double[] navigationTick() {
@@ -242,24 +336,39 @@ public class AutopilotHost {
     }
 
     public double[] navigationTick(double deltaPos) {
+        return navigationTick(deltaPos, new double[3]);
+    }
+
+    // Writes the [y, x, h] command into ret and returns it, without allocating
+    public double[] navigationTick(double deltaPos, double[] ret) {
         if (diffMode) {
             useOrientation = false;
         }
 
+        ret[0] = 0;
+        ret[1] = 0;
+        ret[2] = 0;
 
         if (navigationStatus == NavigationStatus.STOPPED) {
-            return new double[3];
+            return ret;
+        }
+
+        if (pursuit != null) {
+            pursuitTick(deltaPos, ret);
+            return ret;
         }
 
+        double xErr = navigationTarget[0] - robotPosition[0];
+        double yErr = navigationTarget[1] - robotPosition[1];
+
+        double distance = Math.sqrt(Math.pow(xErr, 2) + Math.pow(yErr, 2));
+
         double chosenOrientationTarget = initialOrientation + (1 - distance/initialDistance)*(orientationTarget-initialOrientation);
         double hErr = Math.asin(Math.sin(chosenOrientationTarget - robotAttitude[0]));
         if (Math.cos(orientationTarget - robotAttitude[0]) < 0) {
             if (Math.sin(orientationTarget - robotAttitude[0]) > 0) {hErr = 2*Math.PI - hErr;} else {hErr = -2*Math.PI - hErr;}
         }
 
-        double xErr = navigationTarget[0] - robotPosition[0];
-        double yErr = navigationTarget[1] - robotPosition[1];
-
         double hCorr = Math.max(-orientationMax, Math.min(orientationMax, hErr * orientationGain));
 
         double translateTargAngle = -Math.atan(xErr / yErr);
@@ -269,12 +378,21 @@ public class AutopilotHost {
 
         double finalAngle = translateTargAngle - robotAttitude[0];
 
-
-        double distance = Math.sqrt(Math.pow(xErr, 2) + Math.pow(yErr, 2));
-        double chosenPower = Math.max(navigationMin, Math.min(navigationMax, distance * navigationGain));
+        double chosenPower;
+        if (motionProfile != null) {
+            chosenPower = Math.max(navigationMin, Math.min(navigationMax, motionProfile.powerAt(distance)));
+        }
+        else {
+            chosenPower = Math.max(navigationMin, Math.min(navigationMax, distance * navigationGain));
+        }
 
         if (chosenPowerAdjuster != null) {
-            chosenPower = chosenPowerAdjuster.adjust(chosenPower, deltaPos);
+            if (tickSeconds > 0) {
+                chosenPower = chosenPowerAdjuster.adjust(chosenPower, deltaPos, tickSeconds);
+            }
+            else {
+                chosenPower = chosenPowerAdjuster.adjust(chosenPower, deltaPos);
+            }
             //Log.v("chosenPower", ""+ chosenPower);
         }
 
@@ -293,9 +411,11 @@ public class AutopilotHost {
 
         if (boolReached) {
             nTimesStable++;
+            timeStable += tickSeconds;
         }
         else {
             nTimesStable = 0;
+            timeStable = 0;
         }
 
 
@@ -307,7 +427,14 @@ public class AutopilotHost {
         if (!fullStop && (rapidStopSatisfied || nTimesStable > 0)) {
             navigationStatus = NavigationStatus.STOPPED;
         }
-        if (fullStop && nTimesStable > countsToStable) {
+        boolean stableLongEnough;
+        if (timeToStable > 0 && tickSeconds > 0) {
+            stableLongEnough = timeStable > timeToStable;
+        }
+        else {
+            stableLongEnough = nTimesStable > countsToStable;
+        }
+        if (fullStop && stableLongEnough) {
             navigationStatus = NavigationStatus.STOPPED;
         }
 
@@ -323,8 +450,6 @@ public class AutopilotHost {
             hCorr = 0;
         }
 
-        double[] ret = new double[3];
-
         if (useOrientation) {
             ret[2] = hCorr;
         }
@@ -334,14 +459,107 @@ public class AutopilotHost {
         }
 
         if (diffMode) {
-            ret = applyDiff(ret);
+            applyDiff(ret);
         }
 
         return ret;
 
     }
 
+    // navigationTick for a pure-pursuit path: head for the lookahead point at the path's power,
+    // and only ramp down and settle once the lookahead point is the end of the path
+    private void pursuitTick(double deltaPos, double[] ret) {
+        pursuit.update(robotPosition);
+        double[] lookaheadPoint = pursuit.getLookaheadPoint();
+        boolean atEnd = pursuit.isLookaheadAtEnd();
+
+        double xErr = lookaheadPoint[0] - robotPosition[0];
+        double yErr = lookaheadPoint[1] - robotPosition[1];
+
+        double distance = Math.sqrt(Math.pow(xErr, 2) + Math.pow(yErr, 2));
+
+        double headingTarget = pursuit.getLookaheadHeading();
+        double hErr = Math.asin(Math.sin(headingTarget - robotAttitude[0]));
+        if (Math.cos(headingTarget - robotAttitude[0]) < 0) {
+            if (Math.sin(headingTarget - robotAttitude[0]) > 0) {hErr = 2*Math.PI - hErr;} else {hErr = -2*Math.PI - hErr;}
+        }
+
+        double hCorr = Math.max(-orientationMax, Math.min(orientationMax, hErr * orientationGain));
+
+        double translateTargAngle = -Math.atan(xErr / yErr);
+        if (yErr < 0) {translateTargAngle += Math.PI;}
+
+        double finalAngle = translateTargAngle - robotAttitude[0];
+
+        double chosenPower = pursuit.getPower();
+        if (atEnd) {
+            chosenPower = Math.max(navigationMin, Math.min(chosenPower, distance * navigationGain));
+        }
+
+        if (chosenPowerAdjuster != null) {
+            if (tickSeconds > 0) {
+                chosenPower = chosenPowerAdjuster.adjust(chosenPower, deltaPos, tickSeconds);
+            }
+            else {
+                chosenPower = chosenPowerAdjuster.adjust(chosenPower, deltaPos);
+            }
+        }
+
+        double xCorr = chosenPower * -Math.sin(finalAngle);
+        double yCorr = chosenPower * Math.cos(finalAngle);
+
+        boolean headingUsed = pursuit.getLookaheadUseHeading() && !diffMode;
+
+        boolean boolReached = atEnd && hasReached(distance, 0, navigationUnitsToStable);
+        if (headingUsed) {
+            boolReached = boolReached && hasReached(hErr, 0, orientationUnitsToStable);
+        }
+
+        if (boolReached) {
+            nTimesStable++;
+            timeStable += tickSeconds;
+        }
+        else {
+            nTimesStable = 0;
+            timeStable = 0;
+        }
+
+        boolean stableLongEnough;
+        if (timeToStable > 0 && tickSeconds > 0) {
+            stableLongEnough = timeStable > timeToStable;
+        }
+        else {
+            stableLongEnough = nTimesStable > countsToStable;
+        }
+        if (stableLongEnough) {
+            navigationStatus = NavigationStatus.STOPPED;
+        }
+
+        if (atEnd && hasReached(distance, 0, navigationUnitsToStable)) {
+            xCorr = 0;
+            yCorr = 0;
+        }
+
+        if (hasReached(hErr, 0, orientationUnitsToStable)) {
+            hCorr = 0;
+        }
+
+        if (headingUsed) {
+            ret[2] = hCorr;
+        }
+        ret[0] = yCorr;
+        ret[1] = xCorr;
+
+        if (diffMode) {
+            applyDiff(ret);
+        }
+    }
+
 
     int nTimesStable;
+    double timeStable;
+
+    double tickSeconds;
+    public double timeToStable;
 
 }
@@ -0,0 +1,193 @@
+package com.evolutionftc.autopilot;
+
+
+// Copyright (c) 2016-2020 Aedan Cullen and/or Evolution Robotics.
+
+
+// Polls a BNO055IMU on its own thread and timestamps each heading reading, so the blocking
+// I2C read is taken out of the trackers' update(). Trackers ask for the heading at their own
+// sample time: between the two newest readings it is interpolated, past the newest it is
+// dead-reckoned at the last measured turn rate (for at most maxExtrapolationNs, then held).
+//
+// Readings are published through a sequence lock, so getHeading() never blocks.
+//
+// Readings are stamped with the sampler's clock (AutopilotClock.SYSTEM by default). Give it the
+// system's clock if that has been changed, so the times it is asked about (e.g. a sensor
+// snapshot's timestamp) mean the same thing.
+
+import com.qualcomm.hardware.bosch.BNO055IMU;
+
+import org.firstinspires.ftc.robotcore.external.navigation.AngleUnit;
+import org.firstinspires.ftc.robotcore.external.navigation.AxesOrder;
+import org.firstinspires.ftc.robotcore.external.navigation.AxesReference;
+import org.firstinspires.ftc.robotcore.external.navigation.Orientation;
+
+import java.util.concurrent.locks.LockSupport;
+
+public class AutopilotImuSampler {
+
+    private final BNO055IMU imu;
+    private final long nsPerSample;
+    private long maxExtrapolationNs;
+    private AutopilotClock clock = AutopilotClock.SYSTEM;
+
+    private Thread worker;
+    private volatile boolean running;
+    private volatile Throwable failure;
+
+    // Two newest readings; odd sequence means a write is in progress
+    private volatile long sequence;
+    private volatile double previousHeading;
+    private volatile long previousTime;
+    private volatile double latestHeading;
+    private volatile long latestTime;
+    private volatile long nSamples;
+
+    public AutopilotImuSampler(BNO055IMU imu, double samplesPerSecond) {
+        this.imu = imu;
+        this.nsPerSample = (long)(1e9 / samplesPerSecond);
+        this.maxExtrapolationNs = 2 * nsPerSample;
+    }
+
+    public void setMaxExtrapolationNs(long maxExtrapolationNs) {
+        this.maxExtrapolationNs = maxExtrapolationNs;
+    }
+
+    public void setClock(AutopilotClock clock) {
+        this.clock = clock;
+    }
+
+    public AutopilotClock getClock() {
+        return clock;
+    }
+
+    public static double readHeading(BNO055IMU imu) {
+        Orientation angles = imu.getAngularOrientation(AxesReference.INTRINSIC, AxesOrder.ZYX, AngleUnit.RADIANS);
+        return angles.firstAngle;
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        // One reading up front, so there is always a heading to report
+        if (nSamples == 0) {
+            publish(readHeading(imu), clock.nanoTime());
+        }
+        running = true;
+        worker = new Thread(new Runnable() {
+            public void run() {
+                runWorker();
+            }
+        }, "AutopilotImuSampler");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    public synchronized void stop() {
+        running = false;
+        if (worker != null) {
+            worker.interrupt();
+            try {
+                worker.join();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            worker = null;
+        }
+    }
+
+    public long getSampleCount() {
+        return nSamples;
+    }
+
+    private void runWorker() {
+        long deadline = System.nanoTime();
+        try {
+            while (running) {
+                // Stamp with the middle of the read, the best guess at when the sensor was sampled
+                long before = clock.nanoTime();
+                double heading = readHeading(imu);
+                long after = clock.nanoTime();
+                publish(heading, before + ((after - before) / 2));
+
+                deadline += nsPerSample;
+                long remaining = deadline - System.nanoTime();
+                if (remaining > 0) {
+                    LockSupport.parkNanos(remaining);
+                }
+                else {
+                    deadline = System.nanoTime();
+                }
+            }
+        }
+        catch (Throwable t) {
+            failure = t;
+            running = false;
+        }
+    }
+
+    private void publish(double heading, long time) {
+        long writerSequence = sequence;
+        sequence = writerSequence + 1;
+        if (nSamples == 0) {
+            previousHeading = heading;
+            previousTime = time;
+        }
+        else {
+            previousHeading = latestHeading;
+            previousTime = latestTime;
+        }
+        latestHeading = heading;
+        latestTime = time;
+        nSamples = nSamples + 1;
+        sequence = writerSequence + 2;
+    }
+
+    // Heading (radians, as reported by the IMU) at the given time on the sampler's clock.
+    // Throws until there is a reading, i.e. before start()
+    public double getHeading(long time) {
+        Throwable workerFailure = failure;
+        if (workerFailure != null) {
+            throw new IllegalStateException("IMU sampler stopped: " + workerFailure, workerFailure);
+        }
+
+        double h0, h1;
+        long t0, t1;
+        long n;
+        long before;
+        long after;
+        do {
+            before = sequence;
+            h0 = previousHeading;
+            t0 = previousTime;
+            h1 = latestHeading;
+            t1 = latestTime;
+            n = nSamples;
+            after = sequence;
+        } while ((before & 1) != 0 || before != after);
+
+        if (n == 0) {
+            throw new IllegalStateException("IMU sampler has no readings; call start() first");
+        }
+
+        if (t1 == t0) {
+            return h1;
+        }
+
+        // Turn between the two readings, taking the short way across the +/-PI seam
+        double turn = AutopilotPlanarPose.wrapHeading(h1 - h0);
+        double rate = turn / (t1 - t0);
+
+        long sinceLatest = time - t1;
+        if (sinceLatest > maxExtrapolationNs) {
+            sinceLatest = maxExtrapolationNs;
+        }
+        if (sinceLatest < t0 - t1) {
+            sinceLatest = t0 - t1;
+        }
+        return AutopilotPlanarPose.wrapHeading(h1 + (rate * sinceLatest));
+    }
+
+}
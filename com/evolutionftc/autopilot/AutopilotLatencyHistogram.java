@@ -0,0 +1,94 @@
+package com.evolutionftc.autopilot;
+
+
+// Copyright (c) 2016-2020 Aedan Cullen and/or Evolution Robotics.
+
+
+// Fixed-size latency histogram in nanoseconds.
+// Buckets are log-linear: 16 per power of two, so any reported percentile is within about 6%
+// of the true value, from 1 ns up to about 18 minutes. record() is a few integer operations
+// on a preallocated array and never allocates.
+//
+// Written by one thread; reads from another thread see a recent, approximately consistent view.
+
+public class AutopilotLatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_SHIFT = 36;
+    private static final int N_BUCKETS = SUB_BUCKETS * (MAX_SHIFT + 2);
+
+    private long[] counts = new long[N_BUCKETS];
+    private long count;
+    private long sum;
+    private long max;
+
+    private static int bucketOf(long ns) {
+        if (ns < SUB_BUCKETS) {
+            return (int)Math.max(ns, 0);
+        }
+        int shift = (63 - Long.numberOfLeadingZeros(ns)) - SUB_BUCKET_BITS;
+        if (shift > MAX_SHIFT) {
+            return N_BUCKETS - 1;
+        }
+        int subBucket = (int)(ns >>> shift) - SUB_BUCKETS;
+        return (SUB_BUCKETS * (shift + 1)) + subBucket;
+    }
+
+    // Largest value that falls in the bucket
+    private static long bucketTop(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = (bucket / SUB_BUCKETS) - 1;
+        long subBucket = bucket % SUB_BUCKETS;
+        return ((SUB_BUCKETS + subBucket + 1) << shift) - 1;
+    }
+
+    public void record(long ns) {
+        counts[bucketOf(ns)]++;
+        count++;
+        sum += ns;
+        if (ns > max) {
+            max = ns;
+        }
+    }
+
+    public void reset() {
+        for (int i = 0; i < N_BUCKETS; i++) {
+            counts[i] = 0;
+        }
+        count = 0;
+        sum = 0;
+        max = 0;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public long getMean() {
+        return (count == 0) ? 0 : sum / count;
+    }
+
+    // Value at or below which the given fraction (0 to 1) of samples fall
+    public long getPercentile(double fraction) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long)Math.ceil(fraction * count));
+        long seen = 0;
+        for (int i = 0; i < N_BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(bucketTop(i), max);
+            }
+        }
+        return max;
+    }
+
+}
@@ -0,0 +1,72 @@
+package com.evolutionftc.autopilot;
+
+
+// Copyright (c) 2016-2020 Aedan Cullen and/or Evolution Robotics.
+
+
+// Per-stage timing of systemTick, one AutopilotLatencyHistogram per stage.
+// Stages are timed back to back: record() takes the stage's start time and returns the end
+// time, which is the next stage's start. Trackers time their own encoder and IMU reads.
+//
+// Enable with AutopilotSystem.enableLoopProfiler(); costs two System.nanoTime() calls per stage.
+
+import org.firstinspires.ftc.robotcore.external.Telemetry;
+
+public class AutopilotLoopProfiler {
+
+    public enum Stage {TICK, TRACKER_ENCODERS, TRACKER_IMU, NAVIGATION, PATH_TRANSITION, TELEMETRY, VISUALIZER, DRIVE};
+
+    private static final Stage[] STAGES = Stage.values();
+    private static final String[] STAGE_NAMES = {"tick", "tracker encoders", "tracker imu", "navigation", "path transition", "telemetry", "visualizer", "drive"};
+
+    private AutopilotLatencyHistogram[] histograms = new AutopilotLatencyHistogram[STAGES.length];
+
+    private StringBuilder telemetryText = new StringBuilder(512);
+
+    public AutopilotLoopProfiler() {
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new AutopilotLatencyHistogram();
+        }
+    }
+
+    // Record the time since startNs against the stage; returns the current time
+    public long record(Stage stage, long startNs) {
+        long timeNow = System.nanoTime();
+        histograms[stage.ordinal()].record(timeNow - startNs);
+        return timeNow;
+    }
+
+    public AutopilotLatencyHistogram getHistogram(Stage stage) {
+        return histograms[stage.ordinal()];
+    }
+
+    public void reset() {
+        for (AutopilotLatencyHistogram histogram : histograms) {
+            histogram.reset();
+        }
+    }
+
+    private static void appendMicros(StringBuilder out, long ns) {
+        AutopilotTelemetryScheduler.appendHundredths(out, AutopilotTelemetryScheduler.hundredths(ns / 1000.0));
+    }
+
+    // p50 / p99 / max per stage in microseconds, for stages that have run
+    public void telemetryUpdate(Telemetry telemetry) {
+        telemetryText.setLength(0);
+        for (Stage stage : STAGES) {
+            AutopilotLatencyHistogram histogram = histograms[stage.ordinal()];
+            if (histogram.getCount() == 0) {
+                continue;
+            }
+            telemetryText.append("\n\t ").append(STAGE_NAMES[stage.ordinal()]).append(":  ");
+            appendMicros(telemetryText, histogram.getPercentile(0.5));
+            telemetryText.append(" / ");
+            appendMicros(telemetryText, histogram.getPercentile(0.99));
+            telemetryText.append(" / ");
+            appendMicros(telemetryText, histogram.getMax());
+            telemetryText.append(" us");
+        }
+        telemetry.addData("* AutopilotLoop (p50 / p99 / max)", telemetryText.toString());
+    }
+
+}
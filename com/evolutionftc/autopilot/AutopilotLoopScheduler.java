@@ -0,0 +1,105 @@
+package com.evolutionftc.autopilot;
+
+
+// Copyright (c) 2016-2020 Aedan Cullen and/or Evolution Robotics.
+
+
+// Paces a control loop at a fixed period. waitForNextTick() parks until shortly before the
+// next deadline, then spins for the last stretch, since a parked thread can wake a
+// millisecond or more late. It returns the measured time since the previous tick, for
+// controllers that integrate or differentiate over time.
+//
+// A tick that starts after its deadline counts as missed, and the schedule restarts from
+// then rather than running a burst of short ticks to catch up. How late each tick starts is
+// kept in a latency histogram (jitter).
+
+import java.util.concurrent.locks.LockSupport;
+
+public class AutopilotLoopScheduler {
+
+    private long nsPerTick;
+    private long spinNs = 1000000;
+
+    private long deadline;
+    private long nsAtLastTick;
+    private boolean startedYet;
+
+    private long nTicks;
+    private long nMissed;
+    private double lastDt;
+    private AutopilotLatencyHistogram lateness = new AutopilotLatencyHistogram();
+
+    public AutopilotLoopScheduler(double ticksPerSecond) {
+        this.nsPerTick = (long)(1e9 / ticksPerSecond);
+    }
+
+    // How long before each deadline to stop parking and spin instead
+    public void setSpinThresholdNs(long spinNs) {
+        this.spinNs = spinNs;
+    }
+
+    public double getPeriodSeconds() {
+        return nsPerTick / 1e9;
+    }
+
+    // Block until the next tick is due; returns seconds since the previous tick started (the period, on the first)
+    public double waitForNextTick() {
+        long timeNow = System.nanoTime();
+        if (!startedYet) {
+            startedYet = true;
+            deadline = timeNow;
+            nsAtLastTick = timeNow - nsPerTick;
+        }
+        else {
+            deadline += nsPerTick;
+        }
+
+        if (timeNow > deadline) {
+            nMissed++;
+            lateness.record(timeNow - deadline);
+            deadline = timeNow;
+        }
+        else {
+            long parkUntil = deadline - spinNs;
+            while (timeNow < parkUntil) {
+                LockSupport.parkNanos(parkUntil - timeNow);
+                timeNow = System.nanoTime();
+            }
+            while (timeNow < deadline) {
+                timeNow = System.nanoTime();
+            }
+            lateness.record(timeNow - deadline);
+        }
+
+        lastDt = (timeNow - nsAtLastTick) / 1e9;
+        nsAtLastTick = timeNow;
+        nTicks++;
+        return lastDt;
+    }
+
+    public double getLastDt() {
+        return lastDt;
+    }
+
+    public long getTickCount() {
+        return nTicks;
+    }
+
+    // Ticks that started after their deadline because the previous one overran
+    public long getMissedCount() {
+        return nMissed;
+    }
+
+    // How late each tick started, in nanoseconds
+    public AutopilotLatencyHistogram getJitterHistogram() {
+        return lateness;
+    }
+
+    public void reset() {
+        startedYet = false;
+        nTicks = 0;
+        nMissed = 0;
+        lateness.reset();
+    }
+
+}
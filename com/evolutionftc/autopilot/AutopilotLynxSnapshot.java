@@ -0,0 +1,40 @@
+package com.evolutionftc.autopilot;
+
+
+// Copyright (c) 2016-2020 Aedan Cullen and/or Evolution Robotics.
+
+
+// AutopilotSensorSnapshot filled by Expansion / Control Hub bulk reads: the hubs are put in
+// MANUAL bulk caching, and each acquire() clears the cache and does one bulk read per hub.
+// The per-motor reads that follow are then answered from that cache without further bus
+// transactions.
+//
+//     new AutopilotLynxSnapshot(hardwareMap.getAll(LynxModule.class))
+//
+// Anything else on the OpMode that reads these hubs also sees the cached values until the next
+// acquire(). The IMU is not part of bulk data and is still read by the tracker as before.
+
+import com.qualcomm.hardware.lynx.LynxModule;
+
+import java.util.List;
+
+public class AutopilotLynxSnapshot extends AutopilotSensorSnapshot {
+
+    private LynxModule[] hubs;
+
+    public AutopilotLynxSnapshot(List<LynxModule> hubs) {
+        this.hubs = hubs.toArray(new LynxModule[hubs.size()]);
+        for (LynxModule hub : this.hubs) {
+            hub.setBulkCachingMode(LynxModule.BulkCachingMode.MANUAL);
+        }
+    }
+
+    void fill() {
+        for (LynxModule hub : hubs) {
+            hub.clearBulkCache();
+            hub.getBulkData();
+        }
+        super.fill();
+    }
+
+}
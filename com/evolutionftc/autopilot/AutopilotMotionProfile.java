@@ -0,0 +1,152 @@
+package com.evolutionftc.autopilot;
+
+
+// Copyright (c) 2016-2020 Aedan Cullen and/or Evolution Robotics.
+
+
+// Speed limit along a straight segment as a function of remaining distance, for use in place of
+// the proportional ramp (distance * navigationGain) in AutopilotHost.navigationTick.
+//
+// TRAPEZOID accelerates and decelerates at a constant rate; SCURVE also limits jerk, so the
+// rate itself ramps up and down. The profile is rest-to-rest on fullstop segments; segments
+// without fullstop are left at full speed at the end so the robot carries on into the next.
+// A short segment simply peaks below full speed where the two sides meet.
+//
+// build() runs once per segment (from setNavigationTarget) and fills a fixed table over the
+// segment's length; powerAt() is then an interpolated table read.
+
+public class AutopilotMotionProfile {
+
+    public enum Type {TRAPEZOID, SCURVE};
+
+    private static final int TABLE_SIZE = 256;
+    private static final double SCURVE_STEP_SECONDS = 0.0005;
+
+    private Type type;
+    private double unitsPerSecond;
+    private double acceleration;
+    private double jerk;
+
+    // SCURVE only: speed reached from rest after each distance, under the jerk and acceleration limits
+    private double[] fromRestDistance;
+    private double[] fromRestSpeed;
+    private int nFromRest;
+
+    private double[] table = new double[TABLE_SIZE];
+    private double unitsPerEntry;
+
+    //
+    // unitsPerSecond: robot speed at full power
+    // acceleration: units/s^2; jerk: units/s^3 (SCURVE only)
+    //
+    public AutopilotMotionProfile(Type type, double unitsPerSecond, double acceleration, double jerk) {
+        // Non-positive limits would never get the robot up to speed (and SCURVE would never finish building)
+        if (!(unitsPerSecond > 0)) {
+            throw new IllegalArgumentException("unitsPerSecond must be positive, got " + unitsPerSecond);
+        }
+        if (!(acceleration > 0)) {
+            throw new IllegalArgumentException("acceleration must be positive, got " + acceleration);
+        }
+        if (type == Type.SCURVE && !(jerk > 0)) {
+            throw new IllegalArgumentException("jerk must be positive for SCURVE, got " + jerk);
+        }
+        this.type = type;
+        this.unitsPerSecond = unitsPerSecond;
+        this.acceleration = acceleration;
+        this.jerk = jerk;
+        if (type == Type.SCURVE) {
+            buildFromRest();
+        }
+    }
+
+    public AutopilotMotionProfile(double unitsPerSecond, double acceleration) {
+        this(Type.TRAPEZOID, unitsPerSecond, acceleration, 0);
+    }
+
+    // Integrate a jerk-limited start from rest up to full speed
+    private void buildFromRest() {
+        int capacity = 1024;
+        fromRestDistance = new double[capacity];
+        fromRestSpeed = new double[capacity];
+        nFromRest = 0;
+
+        double speed = 0;
+        double rate = 0;
+        double distance = 0;
+        while (speed < unitsPerSecond) {
+            if (nFromRest == capacity) {
+                capacity *= 2;
+                double[] biggerDistance = new double[capacity];
+                double[] biggerSpeed = new double[capacity];
+                System.arraycopy(fromRestDistance, 0, biggerDistance, 0, nFromRest);
+                System.arraycopy(fromRestSpeed, 0, biggerSpeed, 0, nFromRest);
+                fromRestDistance = biggerDistance;
+                fromRestSpeed = biggerSpeed;
+            }
+            fromRestDistance[nFromRest] = distance;
+            fromRestSpeed[nFromRest] = speed;
+            nFromRest++;
+
+            // Start easing off the acceleration early enough to arrive at full speed with none left
+            if (speed + ((rate * rate) / (2 * jerk)) >= unitsPerSecond) {
+                rate = Math.max(rate - (jerk * SCURVE_STEP_SECONDS), jerk * SCURVE_STEP_SECONDS);
+            }
+            else {
+                rate = Math.min(acceleration, rate + (jerk * SCURVE_STEP_SECONDS));
+            }
+            distance += speed * SCURVE_STEP_SECONDS;
+            speed += rate * SCURVE_STEP_SECONDS;
+        }
+    }
+
+    // Fastest speed reachable from rest within the given distance
+    private double speedFromRest(double distance) {
+        if (type == Type.TRAPEZOID) {
+            return Math.sqrt(2 * acceleration * distance);
+        }
+        if (distance >= fromRestDistance[nFromRest - 1]) {
+            return unitsPerSecond;
+        }
+        int low = 0;
+        int high = nFromRest - 1;
+        while (high - low > 1) {
+            int middle = (low + high) >>> 1;
+            if (fromRestDistance[middle] <= distance) {
+                low = middle;
+            }
+            else {
+                high = middle;
+            }
+        }
+        double fraction = (distance - fromRestDistance[low]) / (fromRestDistance[high] - fromRestDistance[low]);
+        return fromRestSpeed[low] + (fraction * (fromRestSpeed[high] - fromRestSpeed[low]));
+    }
+
+    // Fill the table for a segment of this length; maxPower caps the top speed
+    public void build(double segmentLength, double maxPower, boolean stopAtEnd) {
+        double topSpeed = maxPower * unitsPerSecond;
+        unitsPerEntry = Math.max(segmentLength, 1e-9) / (TABLE_SIZE - 1);
+        for (int i = 0; i < TABLE_SIZE; i++) {
+            double remaining = i * unitsPerEntry;
+            // Never ask for zero at the start, or the robot would not move off the line
+            double travelled = Math.max(segmentLength - remaining, unitsPerEntry);
+            double speed = Math.min(topSpeed, speedFromRest(travelled));
+            if (stopAtEnd) {
+                speed = Math.min(speed, speedFromRest(remaining));
+            }
+            table[i] = speed / unitsPerSecond;
+        }
+    }
+
+    // Power for the given remaining distance, from the last build()
+    public double powerAt(double remaining) {
+        double index = remaining / unitsPerEntry;
+        if (index >= TABLE_SIZE - 1) {
+            return table[TABLE_SIZE - 1];
+        }
+        int i = (int)index;
+        double fraction = index - i;
+        return table[i] + (fraction * (table[i + 1] - table[i]));
+    }
+
+}
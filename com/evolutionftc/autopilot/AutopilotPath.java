@@ -2,15 +2,28 @@ package com.evolutionftc.autopilot;
 
 
 import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.content.res.Resources;
 
 import org.firstinspires.ftc.robotcore.external.Telemetry;
 
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 // Copyright (c) 2016-2019 Aedan Cullen and/or Evolution Robotics.
 
@@ -23,118 +36,501 @@ public class AutopilotPath {
     String pathName;
 
     private List<AutopilotSegment> pathSegments = new ArrayList<AutopilotSegment>();
-    private String currentSegmentId = "__init__";
 
-    private String successSegmentId = "__init__";
-    private String failSegmentId = "__init__";
+    // Compiled at load: segment ids resolved to indices, so transitions never search
+    private static final int INDEX_INIT = -2;
+    private static final int INDEX_END = -1;
+
+    private AutopilotSegment[] segments;
+    private int[] successIndex;
+    private int[] failIndex;
+    private Map<String, Integer> segmentIndex;
+    private int startIndex;
+
+    private int currentIndex = INDEX_INIT;
 
     public AutopilotPath(String pathName, Telemetry telemetry, Context appContext) {
         this.telemetry = telemetry;
         this.appContext = appContext;
         this.pathName = pathName;
 
-        InputStream ins = appContext.getResources().openRawResource(
-        appContext.getResources().getIdentifier(pathName, "raw", appContext.getPackageName()));
+        // A compiled copy of the path (see gadgets/pathcompiler.py) is preferred over the CSV
+        int compiledId = appContext.getResources().getIdentifier(pathName + COMPILED_SUFFIX, "raw", appContext.getPackageName());
+        if (compiledId != 0) {
+            loadCompiled(mapRawResource(appContext, compiledId));
+        }
+        else {
+            loadCsv(appContext.getResources().openRawResource(
+            appContext.getResources().getIdentifier(pathName, "raw", appContext.getPackageName())));
+        }
+        finishLoad();
+    }
 
-        try (BufferedReader pathReader = new BufferedReader(new InputStreamReader(ins))) {
-            String header = pathReader.readLine();
-            String line = pathReader.readLine();
-            if (!header.toLowerCase().equals(
-            "id,success,fail,targetx,targety,targeth,xygain,hgain,xymax,xymin,hmax,useh")){
-                throw new UnsupportedOperationException("Header line in CSV indicates file unparseable, is it of the correct format?");
+    // Load from a path file on disk (CSV or compiled), for running off the robot
+    public AutopilotPath(File pathFile, Telemetry telemetry) {
+        this.telemetry = telemetry;
+        this.pathName = pathFile.getName();
+
+        try (FileInputStream ins = new FileInputStream(pathFile)) {
+            FileChannel channel = ins.getChannel();
+            ByteBuffer magic = ByteBuffer.allocate(COMPILED_MAGIC.length);
+            channel.read(magic, 0);
+            if (isCompiled(magic.array(), magic.position())) {
+                loadCompiled(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
             }
-            while (line != null) {
-                String[] lineSegments = line.split(",");
+            else {
+                loadCsv(ins);
+            }
+        }
+        catch (IOException e) {
+            throw new IllegalStateException("Error loading path file: " + e.getMessage());
+        }
+        finishLoad();
+    }
+
+    // Load from any stream (CSV or compiled), without an Android Context
+    public AutopilotPath(String pathName, Telemetry telemetry, InputStream ins) {
+        this.telemetry = telemetry;
+        this.pathName = pathName;
+
+        BufferedInputStream bufferedIns = new BufferedInputStream(ins);
+        try {
+            byte[] magic = new byte[COMPILED_MAGIC.length];
+            bufferedIns.mark(magic.length);
+            int nMagic = readFully(bufferedIns, magic);
+            bufferedIns.reset();
+            if (isCompiled(magic, nMagic)) {
+                loadCompiled(ByteBuffer.wrap(readAll(bufferedIns)));
+            }
+            else {
+                loadCsv(bufferedIns);
+            }
+        }
+        catch (IOException e) {
+            throw new IllegalStateException("Error loading path file: " + e.getMessage());
+        }
+        finishLoad();
+    }
+
+    private void finishLoad() {
+        this.pathName = this.pathName + " - loaded " + segments.length + " segments";
+    }
+
+    //
+    // CSV columns. The first twelve are required; usexy, fullstop and diffmode are optional
+    // and default to false, as in files written before they existed. Order is free.
+    //
+    private static final String[] CSV_COLUMNS = {
+        "id", "success", "fail", "targetx", "targety", "targeth", "xygain", "hgain", "xymax", "xymin", "hmax", "useh",
+        "usexy", "fullstop", "diffmode"
+    };
+    private static final int CSV_REQUIRED_COLUMNS = 12;
+
+    private void loadCsv(InputStream ins) {
+        try (Reader pathReader = new InputStreamReader(ins, Charset.forName("UTF-8"))) {
+            AutopilotCsvTokenizer csv = new AutopilotCsvTokenizer(pathReader);
+            int[] columns = readCsvHeader(csv);
+
+            while (!csv.atEndOfFile()) {
+                if (csv.skipBlankLine()) {
+                    continue;
+                }
                 AutopilotSegment newSegment = new AutopilotSegment();
-                newSegment.id = lineSegments[0];
-                newSegment.success = lineSegments[1];
-                newSegment.fail = lineSegments[2];
-                newSegment.navigationTarget = new double[] {
-                    Double.valueOf(lineSegments[3]),
-                    Double.valueOf(lineSegments[4]),
-                    0.0
-                };
-                newSegment.orientationTarget = Double.valueOf(lineSegments[5]);
-
-                newSegment.navigationGain = Double.valueOf(lineSegments[6]);
-                newSegment.orientationGain = Double.valueOf(lineSegments[7]);
-
-                newSegment.navigationMax = Double.valueOf(lineSegments[8]);
-                newSegment.navigationMin = Double.valueOf(lineSegments[9]);
-
-                newSegment.orientationMax = Double.valueOf(lineSegments[10]);
-                newSegment.useOrientation = Boolean.valueOf(lineSegments[11]);
-                
+                newSegment.navigationTarget = new double[3];
+                for (int i = 0; i < columns.length; i++) {
+                    if (csv.atEndOfLine()) {
+                        throw csv.error("expected " + columns.length + " columns, found " + i);
+                    }
+                    readCsvField(csv, columns[i], newSegment);
+                }
+                csv.endLine();
                 pathSegments.add(newSegment);
-                line = pathReader.readLine();
             }
         }
         catch (IOException e) {
             throw new IllegalStateException("Error loading path file: " + e.getMessage());
         }
-        catch (ArrayIndexOutOfBoundsException e) {
-            throw new UnsupportedOperationException("Encountered unparseable line in path file, is it of the correct format?");
+        compile();
+    }
+
+    private static int[] readCsvHeader(AutopilotCsvTokenizer csv) throws IOException {
+        List<String> names = new ArrayList<String>();
+        while (!csv.atEndOfLine()) {
+            names.add(csv.readString().toLowerCase());
         }
-        this.pathName = this.pathName + " - loaded " + pathSegments.size() + " segments";
+        csv.endLine();
 
+        int[] columns = new int[names.size()];
+        boolean[] seen = new boolean[CSV_COLUMNS.length];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = -1;
+            for (int j = 0; j < CSV_COLUMNS.length; j++) {
+                if (CSV_COLUMNS[j].equals(names.get(i))) {
+                    columns[i] = j;
+                }
+            }
+            if (columns[i] == -1 || seen[columns[i]]) {
+                throw new UnsupportedOperationException("Header line in CSV has unknown or repeated column '" + names.get(i) + "', is it of the correct format?");
+            }
+            seen[columns[i]] = true;
+        }
+        for (int j = 0; j < CSV_REQUIRED_COLUMNS; j++) {
+            if (!seen[j]) {
+                throw new UnsupportedOperationException("Header line in CSV is missing column '" + CSV_COLUMNS[j] + "', is it of the correct format?");
+            }
+        }
+        return columns;
     }
 
-    public void telemetryUpdate() {
-        telemetry.addData("* AutopilotPath", "\n" +
-        "\t file:  " + pathName + "\n" +
-        "\t current:  " + currentSegmentId + "\n" +
-        "\t next:  " + successSegmentId + "\n" +
-        "\t fallback:  " + failSegmentId);
-        //telemetry.update();
+    private static void readCsvField(AutopilotCsvTokenizer csv, int column, AutopilotSegment segment) throws IOException {
+        switch (column) {
+            case 0: segment.id = csv.readString(); break;
+            case 1: segment.success = csv.readString(); break;
+            case 2: segment.fail = csv.readString(); break;
+            case 3: segment.navigationTarget[0] = csv.readDouble(); break;
+            case 4: segment.navigationTarget[1] = csv.readDouble(); break;
+            case 5: segment.orientationTarget = csv.readDouble(); break;
+            case 6: segment.navigationGain = csv.readDouble(); break;
+            case 7: segment.orientationGain = csv.readDouble(); break;
+            case 8: segment.navigationMax = csv.readDouble(); break;
+            case 9: segment.navigationMin = csv.readDouble(); break;
+            case 10: segment.orientationMax = csv.readDouble(); break;
+            case 11: segment.useOrientation = csv.readBoolean(); break;
+            case 12: segment.useTranslation = csv.readBoolean(); break;
+            case 13: segment.fullStop = csv.readBoolean(); break;
+            case 14: segment.diffMode = csv.readBoolean(); break;
+        }
     }
 
-    public AutopilotSegment getSegment(String id) {
-        for (AutopilotSegment segment : pathSegments) {
-            if (segment.id.equals(id)) {
-                return segment;
+    //
+    // Compiled path format (big-endian), as written by gadgets/pathcompiler.py:
+    //   "APTH", int version, int segment count n, int index of __start__
+    //   int[n] success index, int[n] fail index (-1 ends the path)
+    //   double[n*8] targetx, targety, targeth, xygain, hgain, xymax, xymin, hmax per segment
+    //   byte[n] flags: useh, usexy, fullstop, diffmode from the low bit up
+    //   per segment: id, success, fail as (unsigned short length, UTF-8 bytes)
+    //
+    // The doubles start on an 8-byte boundary so they can be bulk-copied out of a mapping.
+    //
+    private static final byte[] COMPILED_MAGIC = {'A', 'P', 'T', 'H'};
+    private static final int COMPILED_VERSION = 1;
+    private static final int COMPILED_DOUBLES_PER_SEGMENT = 8;
+    private static final String COMPILED_SUFFIX = "_compiled";
+
+    private static boolean isCompiled(byte[] magic, int length) {
+        if (length < COMPILED_MAGIC.length) {
+            return false;
+        }
+        for (int i = 0; i < COMPILED_MAGIC.length; i++) {
+            if (magic[i] != COMPILED_MAGIC[i]) {
+                return false;
             }
         }
-        return null;
+        return true;
     }
 
-    public AutopilotSegment moveOnSuccess() {
+    // Map the resource straight out of the APK if it is stored uncompressed
+    // (aaptOptions { noCompress "bin" }), otherwise fall back to one bulk read.
+    private static ByteBuffer mapRawResource(Context appContext, int id) {
+        try (AssetFileDescriptor descriptor = appContext.getResources().openRawResourceFd(id);
+             FileInputStream ins = descriptor.createInputStream()) {
+            return ins.getChannel().map(FileChannel.MapMode.READ_ONLY, descriptor.getStartOffset(), descriptor.getLength());
+        }
+        catch (Resources.NotFoundException | IOException e) {
+            try (InputStream ins = appContext.getResources().openRawResource(id)) {
+                return ByteBuffer.wrap(readAll(ins));
+            }
+            catch (IOException e2) {
+                throw new IllegalStateException("Error loading path file: " + e2.getMessage());
+            }
+        }
+    }
 
-        if (currentSegmentId.equals("__init__")) {
-            currentSegmentId = "__start__";
-            AutopilotSegment newCurrent = getSegment(currentSegmentId);
-            successSegmentId = newCurrent.success;
-            failSegmentId = newCurrent.fail;
-            return newCurrent;
+    private static int readFully(InputStream ins, byte[] into) throws IOException {
+        int n = 0;
+        while (n < into.length) {
+            int nRead = ins.read(into, n, into.length - n);
+            if (nRead < 0) {
+                break;
+            }
+            n += nRead;
         }
-        AutopilotSegment newCurrent = getSegment(successSegmentId);
-        if (newCurrent != null) {
-            currentSegmentId = successSegmentId;
-            successSegmentId = newCurrent.success;
-            failSegmentId = newCurrent.fail;
-            return newCurrent;
+        return n;
+    }
+
+    private static byte[] readAll(InputStream ins) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(ins.available(), 4096));
+        byte[] chunk = new byte[8192];
+        int nRead;
+        while ((nRead = ins.read(chunk)) >= 0) {
+            out.write(chunk, 0, nRead);
         }
+        return out.toByteArray();
+    }
+
+    private void loadCompiled(ByteBuffer buffer) {
+        try {
+            buffer.order(ByteOrder.BIG_ENDIAN);
+            buffer.position(COMPILED_MAGIC.length);
+            int version = buffer.getInt();
+            if (version != COMPILED_VERSION) {
+                throw new UnsupportedOperationException("Compiled path file is version " + version + ", expected " + COMPILED_VERSION);
+            }
+            int nSegments = buffer.getInt();
+            int start = buffer.getInt();
+
+            successIndex = new int[nSegments];
+            failIndex = new int[nSegments];
+            double[] numbers = new double[nSegments * COMPILED_DOUBLES_PER_SEGMENT];
+            byte[] flags = new byte[nSegments];
+
+            buffer.asIntBuffer().get(successIndex);
+            buffer.position(buffer.position() + (nSegments * 4));
+            buffer.asIntBuffer().get(failIndex);
+            buffer.position(buffer.position() + (nSegments * 4));
+            buffer.asDoubleBuffer().get(numbers);
+            buffer.position(buffer.position() + (numbers.length * 8));
+            buffer.get(flags);
+
+            Charset utf8 = Charset.forName("UTF-8");
+            byte[] scratch = new byte[0xFFFF];
+            segments = new AutopilotSegment[nSegments];
+            for (int i = 0; i < nSegments; i++) {
+                int n = i * COMPILED_DOUBLES_PER_SEGMENT;
+                AutopilotSegment newSegment = new AutopilotSegment();
+                newSegment.id = readString(buffer, utf8, scratch);
+                newSegment.success = readString(buffer, utf8, scratch);
+                newSegment.fail = readString(buffer, utf8, scratch);
+                newSegment.navigationTarget = new double[] {numbers[n], numbers[n + 1], 0.0};
+                newSegment.orientationTarget = numbers[n + 2];
+                newSegment.navigationGain = numbers[n + 3];
+                newSegment.orientationGain = numbers[n + 4];
+                newSegment.navigationMax = numbers[n + 5];
+                newSegment.navigationMin = numbers[n + 6];
+                newSegment.orientationMax = numbers[n + 7];
+                newSegment.useOrientation = (flags[i] & 0x1) != 0;
+                newSegment.useTranslation = (flags[i] & 0x2) != 0;
+                newSegment.fullStop = (flags[i] & 0x4) != 0;
+                newSegment.diffMode = (flags[i] & 0x8) != 0;
+                segments[i] = newSegment;
+            }
 
-        return null;
+            buildIndex();
+            if (start != startIndex) {
+                throw new UnsupportedOperationException("Compiled path file has the wrong __start__ index");
+            }
+            for (int i = 0; i < nSegments; i++) {
+                if (successIndex[i] < INDEX_END || successIndex[i] >= nSegments ||
+                        failIndex[i] < INDEX_END || failIndex[i] >= nSegments) {
+                    throw new UnsupportedOperationException("Segment '" + segments[i].id + "' in compiled path file has an invalid transition");
+                }
+            }
+            checkExits();
+        }
+        catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new UnsupportedOperationException("Compiled path file is truncated or corrupt, was it written by pathcompiler.py?");
+        }
     }
 
-    public AutopilotSegment moveOnFailure() {
+    private static String readString(ByteBuffer buffer, Charset charset, byte[] scratch) {
+        int length = buffer.getShort() & 0xFFFF;
+        buffer.get(scratch, 0, length);
+        return new String(scratch, 0, length, charset);
+    }
 
-        if (currentSegmentId.equals("__init__")) {
-            currentSegmentId = "__start__";
-            AutopilotSegment newCurrent = getSegment(currentSegmentId);
-            successSegmentId = newCurrent.success;
-            failSegmentId = newCurrent.fail;
-            return newCurrent;
+    // A reference to a name of the form __name__ (e.g. __end__), or an empty one,
+    // ends the path. Any other reference must name a segment in the file.
+    private static boolean isTerminalId(String id) {
+        return id.length() == 0 || (id.length() > 4 && id.startsWith("__") && id.endsWith("__"));
+    }
+
+    private int resolve(AutopilotSegment from, String to, String which) {
+        Integer index = segmentIndex.get(to);
+        if (index != null) {
+            return index;
+        }
+        if (isTerminalId(to)) {
+            return INDEX_END;
+        }
+        throw new UnsupportedOperationException("Segment '" + from.id + "' in path file has " + which +
+                " segment '" + to + "', which does not exist");
+    }
+
+    private void compile() {
+        int nSegments = pathSegments.size();
+        segments = pathSegments.toArray(new AutopilotSegment[nSegments]);
+        successIndex = new int[nSegments];
+        failIndex = new int[nSegments];
+
+        buildIndex();
+
+        for (int i = 0; i < nSegments; i++) {
+            successIndex[i] = resolve(segments[i], segments[i].success, "success");
+            failIndex[i] = resolve(segments[i], segments[i].fail, "fail");
+        }
+
+        checkExits();
+    }
+
+    private void buildIndex() {
+        int nSegments = segments.length;
+        segmentIndex = new HashMap<String, Integer>(nSegments * 2);
+
+        for (int i = 0; i < nSegments; i++) {
+            if (segmentIndex.put(segments[i].id, i) != null) {
+                throw new UnsupportedOperationException("Segment '" + segments[i].id + "' appears more than once in path file");
+            }
+        }
+
+        Integer start = segmentIndex.get("__start__");
+        if (start == null) {
+            throw new UnsupportedOperationException("Path file has no __start__ segment");
+        }
+        startIndex = start;
+    }
+
+    // Every segment reachable from __start__ must have some way to the end of the path,
+    // otherwise the robot can get caught in a loop it never leaves.
+    private void checkExits() {
+        int nSegments = segments.length;
+
+        // Reverse edges, in compressed form
+        int[] nIncoming = new int[nSegments + 1];
+        for (int i = 0; i < nSegments; i++) {
+            if (successIndex[i] >= 0) {nIncoming[successIndex[i] + 1]++;}
+            if (failIndex[i] >= 0) {nIncoming[failIndex[i] + 1]++;}
+        }
+        for (int i = 0; i < nSegments; i++) {
+            nIncoming[i + 1] += nIncoming[i];
+        }
+        int[] incoming = new int[nIncoming[nSegments]];
+        int[] fill = new int[nSegments];
+        for (int i = 0; i < nSegments; i++) {
+            if (successIndex[i] >= 0) {incoming[nIncoming[successIndex[i]] + fill[successIndex[i]]++] = i;}
+            if (failIndex[i] >= 0) {incoming[nIncoming[failIndex[i]] + fill[failIndex[i]]++] = i;}
+        }
+
+        // Walk back from every segment that can end the path
+        boolean[] canExit = new boolean[nSegments];
+        int[] queue = new int[nSegments];
+        int head = 0;
+        int tail = 0;
+        for (int i = 0; i < nSegments; i++) {
+            if (successIndex[i] == INDEX_END || failIndex[i] == INDEX_END) {
+                canExit[i] = true;
+                queue[tail++] = i;
+            }
+        }
+        while (head < tail) {
+            int i = queue[head++];
+            for (int j = nIncoming[i]; j < nIncoming[i + 1]; j++) {
+                if (!canExit[incoming[j]]) {
+                    canExit[incoming[j]] = true;
+                    queue[tail++] = incoming[j];
+                }
+            }
+        }
+
+        // Walk forward from __start__
+        boolean[] reached = new boolean[nSegments];
+        head = 0;
+        tail = 0;
+        reached[startIndex] = true;
+        queue[tail++] = startIndex;
+        while (head < tail) {
+            int i = queue[head++];
+            if (!canExit[i]) {
+                throw new UnsupportedOperationException("Segment '" + segments[i].id +
+                        "' in path file is part of a loop with no way to the end of the path");
+            }
+            if (successIndex[i] >= 0 && !reached[successIndex[i]]) {
+                reached[successIndex[i]] = true;
+                queue[tail++] = successIndex[i];
+            }
+            if (failIndex[i] >= 0 && !reached[failIndex[i]]) {
+                reached[failIndex[i]] = true;
+                queue[tail++] = failIndex[i];
+            }
         }
-        AutopilotSegment newCurrent = getSegment(failSegmentId);
-        if (newCurrent != null) {
-            currentSegmentId = failSegmentId;
-            successSegmentId = newCurrent.success;
-            failSegmentId = newCurrent.fail;
-            return newCurrent;
+    }
+
+    // Only changes on a transition, so it is rebuilt then rather than on every update
+    private String telemetryValue;
+    private int telemetryIndex = INDEX_INIT;
+
+    public void telemetryUpdate() {
+        if (telemetryValue == null || telemetryIndex != currentIndex) {
+            String currentSegmentId = "__init__";
+            String successSegmentId = "__init__";
+            String failSegmentId = "__init__";
+            if (currentIndex >= 0) {
+                currentSegmentId = segments[currentIndex].id;
+                successSegmentId = segments[currentIndex].success;
+                failSegmentId = segments[currentIndex].fail;
+            }
+
+            telemetryIndex = currentIndex;
+            telemetryValue = "\n" +
+            "\t file:  " + pathName + "\n" +
+            "\t current:  " + currentSegmentId + "\n" +
+            "\t next:  " + successSegmentId + "\n" +
+            "\t fallback:  " + failSegmentId;
+        }
+
+        telemetry.addData("* AutopilotPath", telemetryValue);
+        //telemetry.update();
+    }
+
+    public AutopilotSegment getSegment(String id) {
+        Integer index = segmentIndex.get(id);
+        if (index == null) {
+            return null;
+        }
+        return segments[index];
+    }
+
+    // Position of the current segment in the path file, or -1 before the first transition
+    public int getCurrentSegmentIndex() {
+        return (currentIndex < 0) ? -1 : currentIndex;
+    }
+
+    public int getStartIndex() {
+        return startIndex;
+    }
+
+    // Index of the segment that follows on success, or -1 if the path ends there
+    public int getSuccessIndex(int index) {
+        return Math.max(successIndex[index], INDEX_END);
+    }
+
+    public AutopilotSegment getSegment(int index) {
+        return segments[index];
+    }
+
+    public int getSegmentCount() {
+        return segments.length;
+    }
+
+    private AutopilotSegment moveTo(int index) {
+        if (index < 0) {
+            return null;
+        }
+        currentIndex = index;
+        return segments[index];
+    }
+
+    public AutopilotSegment moveOnSuccess() {
+        if (currentIndex == INDEX_INIT) {
+            return moveTo(startIndex);
         }
+        return moveTo(successIndex[currentIndex]);
+    }
 
-        return null;
+    public AutopilotSegment moveOnFailure() {
+        if (currentIndex == INDEX_INIT) {
+            return moveTo(startIndex);
+        }
+        return moveTo(failIndex[currentIndex]);
     }
 
 }
@@ -0,0 +1,52 @@
+package com.evolutionftc.autopilot;
+
+
+// Copyright (c) 2016-2020 Aedan Cullen and/or Evolution Robotics.
+
+
+// Planar pose kernel shared by the trackers.
+// Equivalent to the old buildTransform/matmul path with pitch and roll at zero,
+// but works in place on the caller's position array and allocates nothing.
+
+public final class AutopilotPlanarPose {
+
+    private AutopilotPlanarPose() {}
+
+    // Move a body at position[] by a body-frame translation (dx, dy, dz), rotated by heading h.
+    public static void translate(double[] position, double dx, double dy, double dz, double h) {
+        translate(position, dx, dy, dz, Math.sin(h), Math.cos(h));
+    }
+
+    // Same as above, for callers that already have sin(h) and cos(h) at hand.
+    public static void translate(double[] position, double dx, double dy, double dz, double sinh, double cosh) {
+        position[0] += (cosh * dx) - (sinh * dy);
+        position[1] += (sinh * dx) + (cosh * dy);
+        position[2] += dz;
+    }
+
+    // Move by a body-frame translation (dx, dy, dz) made while the heading turned steadily from h
+    // to h + dh, i.e. along a circular arc. Exact in one step; the limit of splitting the move into
+    // many small translate() calls at intermediate headings.
+    public static void arc(double[] position, double dx, double dy, double dz, double h, double dh) {
+        // Average of the rotation over the turn: [[a, -b], [b, a]]
+        double a;
+        double b;
+        if (Math.abs(dh) < 1e-6) {
+            a = 1 - ((dh * dh) / 6);
+            b = dh / 2;
+        }
+        else {
+            a = Math.sin(dh) / dh;
+            b = (1 - Math.cos(dh)) / dh;
+        }
+        translate(position, (a * dx) - (b * dy), (b * dx) + (a * dy), dz, h);
+    }
+
+    // Wrap a heading into [-PI, PI].
+    public static double wrapHeading(double h) {
+        if (h < -Math.PI) {h += 2*Math.PI;}
+        if (h > Math.PI) {h -= 2*Math.PI;}
+        return h;
+    }
+
+}
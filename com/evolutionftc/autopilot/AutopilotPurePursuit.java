@@ -0,0 +1,190 @@
+package com.evolutionftc.autopilot;
+
+
+// Copyright (c) 2016-2020 Aedan Cullen and/or Evolution Robotics.
+
+
+// Pure-pursuit follower for densely sampled paths (e.g. from gadgets/splinecompiler.py).
+// The robot steers toward a point a fixed arc length (the lookahead) ahead of the closest
+// point on the path, so it follows curves without stopping at each sample.
+//
+// Both the closest point and the lookahead point are found by advancing cursors from where
+// they were on the previous tick, never by scanning the whole path, so a tick is amortized O(1).
+// The cursors only move forward: the robot is assumed to make progress along the path.
+//
+// Used through AutopilotHost.setPursuit() / AutopilotSystem.beginPathPursuit(); the host turns
+// the lookahead point into the same [y, x, h] command as navigationTick.
+
+public class AutopilotPurePursuit {
+
+    private double[] x;
+    private double[] y;
+    private double[] h;
+    private boolean[] useH;
+    private double[] power;
+    // Arc length from the first point
+    private double[] s;
+    private int nPoints;
+
+    private double lookahead;
+
+    private int closestIndex;
+    private int lookaheadIndex;
+
+    // Results of the last update()
+    private double[] lookaheadPoint = new double[2];
+    private double lookaheadHeading;
+    private boolean lookaheadUseHeading;
+    private double closestPower;
+    private double remaining;
+    private boolean lookaheadAtEnd;
+
+    //
+    // Points are the targets of the path's segments in success order, from __start__ to the end;
+    // a first point at the robot's starting position is added by begin().
+    // Negated axes and heading follow AutopilotHost's navigationTargetInverts / orientationTargetInvert.
+    //
+    public AutopilotPurePursuit(AutopilotPath path, double lookahead, boolean[] inverts, boolean orientationInvert) {
+        int nSegments = path.getSegmentCount();
+        allocate(nSegments + 1);
+        this.lookahead = lookahead;
+
+        int index = path.getStartIndex();
+        int n = 1;
+        // A path with a loop has more steps than segments; stop after one pass over each
+        while (index >= 0 && n <= nSegments) {
+            AutopilotSegment segment = path.getSegment(index);
+            x[n] = segment.navigationTarget[0];
+            y[n] = segment.navigationTarget[1];
+            if (inverts != null) {
+                if (inverts[0]) {x[n] = -x[n];}
+                if (inverts[1]) {y[n] = -y[n];}
+            }
+            h[n] = orientationInvert ? (Math.PI * 2) - segment.orientationTarget : segment.orientationTarget;
+            useH[n] = segment.useOrientation;
+            power[n] = segment.navigationMax;
+            n++;
+            index = path.getSuccessIndex(index);
+        }
+        nPoints = n;
+    }
+
+    private void allocate(int capacity) {
+        x = new double[capacity];
+        y = new double[capacity];
+        h = new double[capacity];
+        useH = new boolean[capacity];
+        power = new double[capacity];
+        s = new double[capacity];
+    }
+
+    public void setLookahead(double lookahead) {
+        this.lookahead = lookahead;
+    }
+
+    // Start from the robot's current pose
+    public void begin(double[] robotPosition, double robotHeading) {
+        x[0] = robotPosition[0];
+        y[0] = robotPosition[1];
+        h[0] = robotHeading;
+        useH[0] = (nPoints > 1) && useH[1];
+        power[0] = (nPoints > 1) ? power[1] : 0;
+        s[0] = 0;
+        for (int i = 1; i < nPoints; i++) {
+            s[i] = s[i - 1] + Math.sqrt(Math.pow(x[i] - x[i - 1], 2) + Math.pow(y[i] - y[i - 1], 2));
+        }
+        closestIndex = 0;
+        lookaheadIndex = 0;
+    }
+
+    public void update(double[] robotPosition) {
+        double px = robotPosition[0];
+        double py = robotPosition[1];
+
+        // Closest point: move on while the robot is past the end of the current piece
+        double fraction = 0;
+        while (true) {
+            if (closestIndex >= nPoints - 1) {
+                fraction = 0;
+                break;
+            }
+            double dx = x[closestIndex + 1] - x[closestIndex];
+            double dy = y[closestIndex + 1] - y[closestIndex];
+            double lengthSquared = (dx * dx) + (dy * dy);
+            fraction = (lengthSquared == 0) ? 1 : (((px - x[closestIndex]) * dx) + ((py - y[closestIndex]) * dy)) / lengthSquared;
+            if (fraction < 1) {
+                fraction = Math.max(0, fraction);
+                break;
+            }
+            closestIndex++;
+        }
+        double closestS = s[closestIndex];
+        if (closestIndex < nPoints - 1) {
+            closestS += fraction * (s[closestIndex + 1] - s[closestIndex]);
+            closestPower = power[closestIndex] + (fraction * (power[closestIndex + 1] - power[closestIndex]));
+        }
+        else {
+            closestPower = power[closestIndex];
+        }
+        remaining = s[nPoints - 1] - closestS;
+
+        // Lookahead point: the same walk, by arc length
+        double targetS = closestS + lookahead;
+        if (lookaheadIndex < closestIndex) {
+            lookaheadIndex = closestIndex;
+        }
+        while (lookaheadIndex < nPoints - 1 && s[lookaheadIndex + 1] < targetS) {
+            lookaheadIndex++;
+        }
+        lookaheadAtEnd = lookaheadIndex >= nPoints - 1;
+        if (lookaheadAtEnd) {
+            lookaheadPoint[0] = x[nPoints - 1];
+            lookaheadPoint[1] = y[nPoints - 1];
+            lookaheadHeading = h[nPoints - 1];
+            lookaheadUseHeading = useH[nPoints - 1];
+            return;
+        }
+        double span = s[lookaheadIndex + 1] - s[lookaheadIndex];
+        double along = (span == 0) ? 1 : Math.max(0, Math.min(1, (targetS - s[lookaheadIndex]) / span));
+        lookaheadPoint[0] = x[lookaheadIndex] + (along * (x[lookaheadIndex + 1] - x[lookaheadIndex]));
+        lookaheadPoint[1] = y[lookaheadIndex] + (along * (y[lookaheadIndex + 1] - y[lookaheadIndex]));
+        lookaheadHeading = h[lookaheadIndex + 1];
+        lookaheadUseHeading = useH[lookaheadIndex + 1];
+    }
+
+    public double[] getLookaheadPoint() {
+        return lookaheadPoint;
+    }
+
+    public double getLookaheadHeading() {
+        return lookaheadHeading;
+    }
+
+    public boolean getLookaheadUseHeading() {
+        return lookaheadUseHeading;
+    }
+
+    // True once the lookahead point has reached the end of the path, which is then the target
+    public boolean isLookaheadAtEnd() {
+        return lookaheadAtEnd;
+    }
+
+    // Max power of the path at the closest point, interpolated between samples
+    public double getPower() {
+        return closestPower;
+    }
+
+    // Arc length from the closest point to the end of the path
+    public double getRemaining() {
+        return remaining;
+    }
+
+    public int getClosestIndex() {
+        return closestIndex;
+    }
+
+    public int getPointCount() {
+        return nPoints;
+    }
+
+}
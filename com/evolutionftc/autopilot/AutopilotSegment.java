@@ -35,7 +35,7 @@ public class AutopilotSegment {
         this.orientationMax = other.orientationMax;
         this.useOrientation = other.useOrientation;
         this.useTranslation = other.useTranslation;
-        this.fullStop = fullStop;
-        this.diffMode = diffMode;
+        this.fullStop = other.fullStop;
+        this.diffMode = other.diffMode;
     }
 }
@@ -0,0 +1,80 @@
+package com.evolutionftc.autopilot;
+
+
+// Copyright (c) 2016-2020 Aedan Cullen and/or Evolution Robotics.
+
+
+// Per-tick snapshot of the encoder counts the trackers read. acquire() samples every encoder
+// once and stamps the time; trackers then read from the snapshot (AutopilotTracker.readEncoder)
+// instead of each going to its motor, so all encoders used in one update are from the same
+// sample. Motors are added the first time a tracker reads them.
+//
+// This class reads each motor in turn, which is what a desktop simulation needs. On the robot,
+// AutopilotLynxSnapshot fills it from one bulk read per hub.
+//
+// AutopilotSystem.setSensorSnapshot() acquires once per systemTick (or once per update on the
+// tracker thread).
+
+import com.qualcomm.robotcore.hardware.DcMotor;
+
+public class AutopilotSensorSnapshot {
+
+    private DcMotor[] motors = new DcMotor[8];
+    private int[] positions = new int[8];
+    private int nMotors;
+
+    private long timestamp;
+    private long nAcquired;
+    private AutopilotClock clock = AutopilotClock.SYSTEM;
+
+    public void setClock(AutopilotClock clock) {
+        this.clock = clock;
+    }
+
+    public void acquire() {
+        timestamp = clock.nanoTime();
+        fill();
+        nAcquired++;
+    }
+
+    // Read every known motor into the snapshot
+    void fill() {
+        for (int i = 0; i < nMotors; i++) {
+            positions[i] = motors[i].getCurrentPosition();
+        }
+    }
+
+    // Count for the motor as of the last acquire(); a motor not seen before is read now and then kept
+    public int getCurrentPosition(DcMotor motor) {
+        for (int i = 0; i < nMotors; i++) {
+            if (motors[i] == motor) {
+                return positions[i];
+            }
+        }
+        if (nMotors == motors.length) {
+            DcMotor[] biggerMotors = new DcMotor[nMotors * 2];
+            int[] biggerPositions = new int[nMotors * 2];
+            System.arraycopy(motors, 0, biggerMotors, 0, nMotors);
+            System.arraycopy(positions, 0, biggerPositions, 0, nMotors);
+            motors = biggerMotors;
+            positions = biggerPositions;
+        }
+        motors[nMotors] = motor;
+        positions[nMotors] = motor.getCurrentPosition();
+        return positions[nMotors++];
+    }
+
+    // Clock time (nanoseconds) at which the last acquire() started
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public long getAcquireCount() {
+        return nAcquired;
+    }
+
+    public int getMotorCount() {
+        return nMotors;
+    }
+
+}
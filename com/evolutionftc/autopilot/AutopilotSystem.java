@@ -14,7 +14,24 @@ public class AutopilotSystem {
 
 	private static final int VISUALIZER_BROADCAST_INTERVAL_MS = 50;
 
-	private long msAtLastBroadcast;
+	private long nsAtLastBroadcast;
+
+	private AutopilotVisualizerServer visualizerServer;
+
+	private AutopilotFlightRecorder flightRecorder;
+
+	private AutopilotLoopProfiler loopProfiler;
+	private boolean loopProfilerTelemetry;
+
+	private AutopilotLoopScheduler loopScheduler;
+
+	private AutopilotTelemetryScheduler telemetryScheduler = new AutopilotTelemetryScheduler(0);
+
+	private AutopilotClock clock = AutopilotClock.SYSTEM;
+
+	private AutopilotDrive drive;
+
+	private AutopilotSensorSnapshot sensorSnapshot;
 
 	private Telemetry telemetry;
 	private Context appContext;
@@ -24,6 +41,7 @@ public class AutopilotSystem {
 	public AutopilotPath pathFollower;
 
 	private AutopilotSegment currentSegment;
+	private boolean pathComplete;
 
 	public AutopilotSystem(){}
 
@@ -35,12 +53,162 @@ public class AutopilotSystem {
 		this.telemetry = telemetry;
 		this.appContext = appContext;
 		this.visualizerBroadcastEnabled = visualizerBroadcastEnabled;
-		this.msAtLastBroadcast = System.currentTimeMillis();
+		this.nsAtLastBroadcast = clock.nanoTime();
 	}
 
 	public void beginPathTravel(String pathName) {
-		pathFollower = new AutopilotPath(pathName, telemetry, appContext);
+		beginPathTravel(new AutopilotPath(pathName, telemetry, appContext));
+	}
+
+	public void beginPathTravel(AutopilotPath path) {
+		pathFollower = path;
+		pathComplete = false;
+		pursuit = null;
+	}
+
+	private AutopilotPurePursuit pursuit;
+
+	// Follow a densely sampled path (e.g. from gadgets/splinecompiler.py) by pure pursuit instead of
+	// segment by segment. Gains and limits come from the path's start segment, the max power of each
+	// point from its own segment. Segment transition callbacks are not run in this mode.
+	public void beginPathPursuit(String pathName, double lookahead) {
+		beginPathPursuit(new AutopilotPath(pathName, telemetry, appContext), lookahead);
+	}
+
+	public void beginPathPursuit(AutopilotPath path, double lookahead) {
+		beginPathTravel(path);
+		pursuit = new AutopilotPurePursuit(path, lookahead,
+				host.getNavigationTargetInverts(), host.getOrientationTargetInvert());
+	}
+
+	// True once the path has run off its last segment
+	public boolean isPathComplete() {
+		return pathComplete;
+	}
+
+	// Optional: integrate odometry on a dedicated fixed-rate thread instead of inside systemTick.
+	// Call stopTrackerThread() when the OpMode ends.
+	public void startTrackerThread(double updatesPerSecond) {
+		if (tracker instanceof AutopilotTrackerThread) {
+			return;
+		}
+		AutopilotTrackerThread trackerThread = new AutopilotTrackerThread(tracker, updatesPerSecond);
+		if (sensorSnapshot != null) {
+			trackerThread.setSensorSnapshot(sensorSnapshot);
+		}
+		trackerThread.start();
+		tracker = trackerThread;
+	}
+
+	public void stopTrackerThread() {
+		if (tracker instanceof AutopilotTrackerThread) {
+			AutopilotTrackerThread trackerThread = (AutopilotTrackerThread)tracker;
+			trackerThread.stop();
+			tracker = trackerThread.getTracker();
+		}
+	}
+
+	// Time source for everything timed per tick (AutopilotClock.SYSTEM by default); AutopilotSimulator
+	// (desktop/) sets its own virtual clock here
+	public void setClock(AutopilotClock clock) {
+		this.clock = clock;
+		host.setClock(clock);
+		telemetryScheduler.setClock(clock);
+		if (flightRecorder != null) {
+			flightRecorder.setClock(clock);
+		}
+		if (sensorSnapshot != null) {
+			sensorSnapshot.setClock(clock);
+		}
+		nsAtLastBroadcast = clock.nanoTime();
+	}
+
+	public AutopilotClock getClock() {
+		return clock;
+	}
+
+	// Publish telemetry at most once per interval instead of on every tick (0, the default, is every tick).
+	// Anything else the OpMode adds to telemetry is then sent on the same schedule.
+	public void setTelemetryInterval(int msPerUpdate) {
+		telemetryScheduler.setInterval(msPerUpdate);
+	}
+
+	// Stream every tick's pose to subscribers over TCP (see gadgets/visualizer.py), instead of
+	// the rate-limited logcat broadcast. Call disableVisualizerStream() when the OpMode ends.
+	public void enableVisualizerStream(int port) {
+		if (visualizerServer == null) {
+			visualizerServer = new AutopilotVisualizerServer(port);
+			visualizerServer.start();
+		}
+	}
+
+	public void disableVisualizerStream() {
+		if (visualizerServer != null) {
+			visualizerServer.stop();
+			visualizerServer = null;
+		}
+	}
+
+	// Read tracker encoders from a snapshot acquired once per tick (e.g. an AutopilotLynxSnapshot
+	// for hub bulk reads) instead of one read per encoder. Set before startTrackerThread().
+	public void setSensorSnapshot(AutopilotSensorSnapshot sensorSnapshot) {
+		this.sensorSnapshot = sensorSnapshot;
+		if (sensorSnapshot != null) {
+			sensorSnapshot.setClock(clock);
+		}
+		tracker.setSensorSnapshot(sensorSnapshot);
+	}
+
+	public AutopilotSensorSnapshot getSensorSnapshot() {
+		return sensorSnapshot;
+	}
+
+	// Have systemTick drive the motors itself through the given mixer (null to go back to using its return value)
+	public void setDrive(AutopilotDrive drive) {
+		this.drive = drive;
+	}
+
+	public AutopilotDrive getDrive() {
+		return drive;
+	}
+
+	// Record every tick (see AutopilotFlightRecorder); capacity is in ticks, oldest overwritten first
+	public void enableFlightRecorder(int capacity) {
+		flightRecorder = new AutopilotFlightRecorder(capacity);
+		flightRecorder.setClock(clock);
+	}
+
+	public AutopilotFlightRecorder getFlightRecorder() {
+		return flightRecorder;
+	}
+
+	// Time each stage of systemTick (see AutopilotLoopProfiler), optionally shown as a telemetry page
+	public void enableLoopProfiler(boolean showInTelemetry) {
+		if (loopProfiler == null) {
+			loopProfiler = new AutopilotLoopProfiler();
+		}
+		loopProfilerTelemetry = showInTelemetry;
+		tracker.setProfiler(loopProfiler);
+	}
 
+	public AutopilotLoopProfiler getLoopProfiler() {
+		return loopProfiler;
+	}
+
+	// Run systemTick at a fixed rate: each call first waits for its slot, and the host is given
+	// the measured time since the previous tick. Pass 0 to go back to running unpaced.
+	public void setLoopRate(double ticksPerSecond) {
+		if (ticksPerSecond > 0) {
+			loopScheduler = new AutopilotLoopScheduler(ticksPerSecond);
+		}
+		else {
+			loopScheduler = null;
+			host.setTickInterval(0);
+		}
+	}
+
+	public AutopilotLoopScheduler getLoopScheduler() {
+		return loopScheduler;
 	}
 
 	public void onSegmentTransition(AutopilotSegment previous, AutopilotSegment next, boolean wasOkayToContinue) {}
@@ -60,41 +228,109 @@ public class AutopilotSystem {
 		Log.v("AutopilotVisBcast", status+","+robotX+","+robotY+","+robotH);
     }
 
-    private static long staticMsAtLastBroadcast;
+    private static long staticNsAtLastBroadcast = AutopilotClock.SYSTEM.nanoTime();
 
     public static void visualizerBroadcastRoutine(AutopilotHost broadcastHost) {
-        long timeNow = System.currentTimeMillis();
-        if (timeNow - staticMsAtLastBroadcast > VISUALIZER_BROADCAST_INTERVAL_MS)
+        long timeNow = AutopilotClock.SYSTEM.nanoTime();
+        if ((timeNow - staticNsAtLastBroadcast) / 1000000 > VISUALIZER_BROADCAST_INTERVAL_MS)
         {
             doVisualizerBroadcast(broadcastHost);
-            staticMsAtLastBroadcast = timeNow;
+            staticNsAtLastBroadcast = timeNow;
         }
     }
 
 
     public double[] systemTick() {
-        long timeNow = System.currentTimeMillis();
+        return systemTick(new double[3]);
+    }
+
+    // Writes the [y, x, h] command into the given array and returns it; allocates nothing once running
+    public double[] systemTick(double[] res) {
+        if (loopScheduler != null) {
+            host.setTickInterval(loopScheduler.waitForNextTick());
+        }
+
+        long tickNs = profileStart();
+
+        tick(res);
+
+        if (drive != null) {
+            long driveNs = profileStart();
+            drive.drive(res);
+            profile(AutopilotLoopProfiler.Stage.DRIVE, driveNs);
+        }
+
+        if (flightRecorder != null) {
+            int segmentIndex = (pathFollower == null) ? -1 : pathFollower.getCurrentSegmentIndex();
+            flightRecorder.record(tracker, host, res, segmentIndex);
+        }
+
+        profile(AutopilotLoopProfiler.Stage.TICK, tickNs);
+        return res;
+    }
+
+    private long profileStart() {
+        return (loopProfiler != null) ? System.nanoTime() : 0;
+    }
+
+    private long profile(AutopilotLoopProfiler.Stage stage, long startNs) {
+        if (loopProfiler == null) {
+            return 0;
+        }
+        return loopProfiler.record(stage, startNs);
+    }
+
+    private void tick(double[] res) {
+        // A tracker thread acquires its own snapshot before each update
+        if (sensorSnapshot != null && !(tracker instanceof AutopilotTrackerThread)) {
+            sensorSnapshot.acquire();
+        }
+        host.communicate(tracker);
+
+        long stageNs = profileStart();
+
+        long timeNow = clock.nanoTime();
         if (visualizerBroadcastEnabled &&
-                timeNow - msAtLastBroadcast > VISUALIZER_BROADCAST_INTERVAL_MS)
+                (timeNow - nsAtLastBroadcast) / 1000000 > VISUALIZER_BROADCAST_INTERVAL_MS)
         {
             this.doVisualizerBroadcast(host);
-            msAtLastBroadcast = timeNow;
+            nsAtLastBroadcast = timeNow;
         }
 
-        host.communicate(tracker);
+        if (visualizerServer != null) {
+            visualizerServer.publish(host.getNavigationStatus(),
+                    host.getRobotPosition()[0], host.getRobotPosition()[1], host.getRobotAttitude()[0]);
+        }
 
-        host.telemetryUpdate();
+        stageNs = profile(AutopilotLoopProfiler.Stage.VISUALIZER, stageNs);
 
-        if (pathFollower == null) {
+        boolean telemetryDue = telemetryScheduler.isDue();
+
+        if (telemetryDue) {
+            host.telemetryUpdate();
+            if (pathFollower != null) {
+                pathFollower.telemetryUpdate();
+            }
+            if (loopProfiler != null && loopProfilerTelemetry) {
+                loopProfiler.telemetryUpdate(telemetry);
+            }
             telemetry.update();
-            return new double[3];
+            stageNs = profile(AutopilotLoopProfiler.Stage.TELEMETRY, stageNs);
+        }
+
+        if (pathFollower == null) {
+            clear(res);
+            return;
         }
 
-        pathFollower.telemetryUpdate();
+        if (pursuit != null) {
+            pursuitTick(res, stageNs);
+            return;
+        }
 
-        telemetry.update();
+        host.navigationTick(tracker.getDeltaPos(), res);
 
-        double[] res = host.navigationTick();
+        stageNs = profile(AutopilotLoopProfiler.Stage.NAVIGATION, stageNs);
 
         if (host.getNavigationStatus() == AutopilotHost.NavigationStatus.STOPPED) {
             AutopilotSegment newSegment = pathFollower.moveOnSuccess();
@@ -104,11 +340,13 @@ public class AutopilotSystem {
                 host.setNavigationTarget(currentSegment);
                 host.setNavigationStatus(AutopilotHost.NavigationStatus.RUNNING);
                 host.communicate(tracker);
-                return host.navigationTick();
+                host.navigationTick(tracker.getDeltaPos(), res);
             }
             else {
-                return new double[3];
+                pathComplete = true;
+                clear(res);
             }
+            profile(AutopilotLoopProfiler.Stage.PATH_TRANSITION, stageNs);
         }
         else if (shouldContinue(currentSegment,
                 host.getRobotAttitude(),
@@ -121,18 +359,46 @@ public class AutopilotSystem {
                 onSegmentTransition(currentSegment, newSegment, false);
                 currentSegment = newSegment;
                 if (currentSegment == null) {
-                    return new double[3];
+                    pathComplete = true;
+                    clear(res);
+                    profile(AutopilotLoopProfiler.Stage.PATH_TRANSITION, stageNs);
+                    return;
                 }
                 host.setNavigationTarget(currentSegment);
                 host.setNavigationStatus(AutopilotHost.NavigationStatus.RUNNING);
                 host.communicate(tracker);
             }
-            return host.navigationTick();
+            host.navigationTick(tracker.getDeltaPos(), res);
+            profile(AutopilotLoopProfiler.Stage.PATH_TRANSITION, stageNs);
         }
-        else {
-            return res;
+
+    }
+
+    private static void clear(double[] res) {
+        res[0] = 0;
+        res[1] = 0;
+        res[2] = 0;
+    }
+
+    private void pursuitTick(double[] res, long stageNs) {
+        if (pathComplete) {
+            clear(res);
+            return;
         }
+        if (host.getPursuit() != pursuit) {
+            // Start from the pose just read by communicate()
+            currentSegment = pathFollower.getSegment(pathFollower.getStartIndex());
+            host.setNavigationTarget(currentSegment);
+            host.setPursuit(pursuit);
+        }
+
+        host.navigationTick(tracker.getDeltaPos(), res);
+
+        profile(AutopilotLoopProfiler.Stage.NAVIGATION, stageNs);
 
+        if (host.getNavigationStatus() == AutopilotHost.NavigationStatus.STOPPED) {
+            pathComplete = true;
+        }
     }
 
 }
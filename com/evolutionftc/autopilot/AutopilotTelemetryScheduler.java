@@ -0,0 +1,66 @@
+package com.evolutionftc.autopilot;
+
+
+// Copyright (c) 2016-2020 Aedan Cullen and/or Evolution Robotics.
+
+
+// Decides which control ticks also publish telemetry, so the driver station traffic runs
+// at its own rate instead of the control rate. An interval of 0 publishes every tick.
+//
+// Also holds the allocation-free number formatting shared by the telemetryUpdate() methods.
+
+public class AutopilotTelemetryScheduler {
+
+    private long nsPerUpdate;
+    private long nsAtLastUpdate;
+    private boolean updatedYet;
+    private AutopilotClock clock = AutopilotClock.SYSTEM;
+
+    public AutopilotTelemetryScheduler(int msPerUpdate) {
+        setInterval(msPerUpdate);
+    }
+
+    public void setInterval(int msPerUpdate) {
+        this.nsPerUpdate = msPerUpdate * 1000000L;
+    }
+
+    public void setClock(AutopilotClock clock) {
+        this.clock = clock;
+    }
+
+    // True if telemetry should be published on this tick; marks it as published if so
+    public boolean isDue() {
+        long timeNow = clock.nanoTime();
+        if (!updatedYet || timeNow - nsAtLastUpdate >= nsPerUpdate) {
+            updatedYet = true;
+            nsAtLastUpdate = timeNow;
+            return true;
+        }
+        return false;
+    }
+
+    // Value rounded to hundredths, as used for change detection and display
+    public static long hundredths(double in) {
+        return Math.round(in * 100);
+    }
+
+    // Append a value in hundredths as a decimal ("1.5", "-0.25", "3.0") without allocating
+    public static void appendHundredths(StringBuilder out, long hundredths) {
+        if (hundredths < 0) {
+            out.append('-');
+            hundredths = -hundredths;
+        }
+        out.append(hundredths / 100).append('.');
+        long fraction = hundredths % 100;
+        if (fraction % 10 == 0) {
+            out.append(fraction / 10);
+        }
+        else {
+            if (fraction < 10) {
+                out.append('0');
+            }
+            out.append(fraction);
+        }
+    }
+
+}
@@ -1,8 +1,39 @@
 package com.evolutionftc.autopilot;
 
+import com.qualcomm.robotcore.hardware.DcMotor;
 
 public class AutopilotTracker {
 
+    AutopilotLoopProfiler profiler;
+
+    AutopilotSensorSnapshot sensorSnapshot;
+
+    // Time the encoder and IMU reads in update() against the profiler's tracker stages
+    public void setProfiler(AutopilotLoopProfiler profiler) {
+        this.profiler = profiler;
+    }
+
+    // Read encoders from a per-tick snapshot instead of from each motor (null to read directly)
+    public void setSensorSnapshot(AutopilotSensorSnapshot sensorSnapshot) {
+        this.sensorSnapshot = sensorSnapshot;
+    }
+
+    int readEncoder(DcMotor motor) {
+        if (sensorSnapshot != null) {
+            return sensorSnapshot.getCurrentPosition(motor);
+        }
+        return motor.getCurrentPosition();
+    }
+
+    // Heading from a background sampler at the instant this update's encoders were read:
+    // the snapshot's timestamp if there is one, else now
+    double readHeading(AutopilotImuSampler imuSampler) {
+        if (sensorSnapshot != null) {
+            return imuSampler.getHeading(sensorSnapshot.getTimestamp());
+        }
+        return imuSampler.getHeading(imuSampler.getClock().nanoTime());
+    }
+
     public double[] getRobotPosition() {
         return new double[3];
     }
@@ -27,6 +58,15 @@ public class AutopilotTracker {
         return new double[3];
     }
 
+    // Copy the pose into caller-owned arrays; trackers that keep their own pose arrays make this allocation-free
+    public void getRobotPosition(double[] position) {
+        System.arraycopy(getRobotPosition(), 0, position, 0, 3);
+    }
+
+    public void getRobotAttitude(double[] attitude) {
+        System.arraycopy(getRobotAttitude(), 0, attitude, 0, 3);
+    }
+
     public void setRobotPosition(double[] position) {
 
     }
@@ -39,4 +79,14 @@ public class AutopilotTracker {
 
     }
 
+    // Encoder counts read by the last update(), in constructor order; returns how many were written
+    public int getRawEncoders(long[] counts) {
+        return 0;
+    }
+
+    // IMU heading read by the last update(), before any offset; NaN for trackers without an IMU
+    public double getRawHeading() {
+        return Double.NaN;
+    }
+
 }
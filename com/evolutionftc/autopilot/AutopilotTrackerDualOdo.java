@@ -28,6 +28,8 @@ public class AutopilotTrackerDualOdo extends AutopilotTracker {
     double ticksPerUnit;
 
     public BNO055IMU imu;
+    private AutopilotImuSampler imuSampler;
+    private double imuHeading;
 
     private double[] rao = new double[3];
 
@@ -38,83 +40,6 @@ public class AutopilotTrackerDualOdo extends AutopilotTracker {
     private double yRadius;
 
 
-    private static double[][] matmul(double[][] firstarray, double[][] secondarray) {
-
-        double [][] result = new double[firstarray.length][secondarray[0].length];
-
-        for (int i = 0; i < firstarray.length; i++) {
-            for (int j = 0; j < secondarray[0].length; j++) {
-                for (int k = 0; k < firstarray[0].length; k++) {
-                    result[i][j] += firstarray[i][k] * secondarray[k][j];
-                }
-            }
-        }
-
-        return result;
-    }
-
-    private static double[][] buildTransform(double[] xyz, double[] hpr){
-
-        double[][] out = new double[4][4];
-
-        double x = xyz[0];
-        double y = xyz[1];
-        double z = xyz[2];
-        double h = hpr[0];
-        double p = hpr[1];
-        double r = hpr[2];
-
-        double sinh = Math.sin(h);
-        double cosh = Math.cos(h);
-        double sinp = Math.sin(p);
-        double cosp = Math.cos(p);
-        double sinr = Math.sin(r);
-        double cosr = Math.cos(r);
-
-        out[0][0] = cosh*cosp;
-        out[0][1] = (cosh*sinp*sinr) - (sinh*cosr);
-        out[0][2] = (cosh*sinp*cosr) + (sinh*sinr);
-        out[0][3] = x;
-        out[1][0] = sinh*cosp;
-        out[1][1] = (sinh*sinp*sinr) + (cosh*cosr);
-        out[1][2] = (sinh*sinp*cosr) - (cosh*sinr);
-        out[1][3] = y;
-        out[2][0] = -sinp;
-        out[2][1] = cosp*sinr;
-        out[2][2] = cosp*cosr;
-        out[2][3] = z;
-        out[3][0] = 0.0;
-        out[3][1] = 0.0;
-        out[3][2] = 0.0;
-        out[3][3] = 1.0;
-
-        return out;
-    }
-
-    private static double[] transform(double[] point, double[] translation, double[] rotation) {
-
-        // Transform a 3D body by rotation and then translation.
-
-        double[][] transform = buildTransform(point, rotation);
-
-        double[][] params = {
-                {translation[0]},
-                {translation[1]},
-                {translation[2]},
-                {1.0}
-        };
-
-        double[][] result = matmul(transform, params);
-
-        double[] out = new double[3];
-
-        out[0] = result[0][0];
-        out[1] = result[1][0];
-        out[2] = result[2][0];
-
-        return out;
-    }
-
     //
     // Set xRadius to the offset in the y-direction of the x-encoder relative to the robot center
     // Set yRadius to the offset in the x-direction of the y-encoder relative to the robot center
@@ -140,23 +65,35 @@ public class AutopilotTrackerDualOdo extends AutopilotTracker {
     }
 
 
+    // Read heading from a background sampler instead of blocking on the IMU in every update
+    public void setImuSampler(AutopilotImuSampler imuSampler) {
+        this.imuSampler = imuSampler;
+    }
+
+
     public void update() {
 
-        double[] oldRobotAttitude = new double[3];
-        oldRobotAttitude[0] = robotAttitude[0];
-        oldRobotAttitude[1] = robotAttitude[1];
-        oldRobotAttitude[2] = robotAttitude[2];
+        double oldHeading = robotAttitude[0];
 
-        Orientation angles = imu.getAngularOrientation(AxesReference.INTRINSIC, AxesOrder.ZYX, AngleUnit.RADIANS);
-        robotAttitude[0] = angles.firstAngle;
+        long profileNs = (profiler != null) ? System.nanoTime() : 0;
+        if (imuSampler != null) {
+            robotAttitude[0] = readHeading(imuSampler);
+        }
+        else {
+            Orientation angles = imu.getAngularOrientation(AxesReference.INTRINSIC, AxesOrder.ZYX, AngleUnit.RADIANS);
+            robotAttitude[0] = angles.firstAngle;
+        }
+        imuHeading = robotAttitude[0];
+        if (profiler != null) {profileNs = profiler.record(AutopilotLoopProfiler.Stage.TRACKER_IMU, profileNs);}
         robotAttitude[1] = 0;
         robotAttitude[2] = 0;
         for (int i = 0; i < 3; i++) {
             robotAttitude[i] -= rao[i];
         }
 
-        long ticksX = x.getCurrentPosition();
-        long ticksY = y.getCurrentPosition();
+        long ticksX = readEncoder(x);
+        long ticksY = readEncoder(y);
+        if (profiler != null) {profiler.record(AutopilotLoopProfiler.Stage.TRACKER_ENCODERS, profileNs);}
 
         double xval = ((double)(ticksX - xenc) / ticksPerUnit);
         double yval = ((double)(ticksY - yenc) / ticksPerUnit);
@@ -167,7 +104,7 @@ public class AutopilotTrackerDualOdo extends AutopilotTracker {
         if (invertX) {xval = -xval;}
         if (invertY) {yval = -yval;}
 
-        double dA = (robotAttitude[0] - oldRobotAttitude[0]);
+        double dA = (robotAttitude[0] - oldHeading);
         if (dA > Math.PI / 4) {dA = Math.PI * 2 - dA;}
         if (dA < -Math.PI / 4) {dA = -Math.PI * 2 - dA;}
         // dA is positive for CCW rotation
@@ -177,9 +114,17 @@ public class AutopilotTrackerDualOdo extends AutopilotTracker {
         xval -= error_xval;
         yval -= error_yval;
 
-        double[] translationDelta = {xval, yval, 0.0};
+        AutopilotPlanarPose.translate(robotPosition, xval, yval, 0, robotAttitude[0]);
+    }
+
+    public int getRawEncoders(long[] counts) {
+        counts[0] = xenc;
+        counts[1] = yenc;
+        return 2;
+    }
 
-        robotPosition = transform(robotPosition, translationDelta, robotAttitude);
+    public double getRawHeading() {
+        return imuHeading;
     }
 
     public double[] getRobotPosition() {
@@ -191,7 +136,8 @@ public class AutopilotTrackerDualOdo extends AutopilotTracker {
     }
 
     public void setRobotPosition(double[] position) {
-        robotPosition = position;
+        // Copied, since the pose is integrated in place
+        System.arraycopy(position, 0, robotPosition, 0, 3);
     }
 
     public void setRobotAttitude(double[] attitude) {
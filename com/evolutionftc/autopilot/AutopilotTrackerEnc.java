@@ -25,8 +25,11 @@ public class AutopilotTrackerEnc extends AutopilotTracker{
 	double ticksPerUnit;
 
 	private BNO055IMU imu;
+	private AutopilotImuSampler imuSampler;
+	private double imuHeading;
 
 	int nSubsteps;
+	boolean arcIntegration;
 	
 	private double[] rao = new double[3];
 
@@ -34,78 +37,6 @@ public class AutopilotTrackerEnc extends AutopilotTracker{
 	private double[] robotAttitude = new double[3];
 
 
-	private static double[][] matmul(double[][] firstarray, double[][] secondarray) {
-
-		double [][] result = new double[firstarray.length][secondarray[0].length];
-
-		for (int i = 0; i < firstarray.length; i++) {
-			for (int j = 0; j < secondarray[0].length; j++) {
-				for (int k = 0; k < firstarray[0].length; k++) {
-					result[i][j] += firstarray[i][k] * secondarray[k][j];
-				}
-			}
-		}
-
-		return result;
-	}
-
-	private static double[][] buildTransform(double[] xyz, double[] hpr) {
-
-		double[][] out = new double[4][4];
-
-		double x = xyz[0];
-		double y = xyz[1];
-		double z = xyz[2];
-		double h = hpr[0];
-		double p = hpr[1];
-		double r = hpr[2];
-
-
-		out[0][0] = Math.cos(h)*Math.cos(p);
-		out[0][1] = (Math.cos(h)*Math.sin(p)*Math.sin(r)) - (Math.sin(h)*Math.cos(r));
-		out[0][2] = (Math.cos(h)*Math.sin(p)*Math.cos(r)) + (Math.sin(h)*Math.sin(r));
-		out[0][3] = x;
-		out[1][0] = Math.sin(h)*Math.cos(p);
-		out[1][1] = (Math.sin(h)*Math.sin(p)*Math.sin(r)) + (Math.cos(h)*Math.cos(r));
-		out[1][2] = (Math.sin(h)*Math.sin(p)*Math.cos(r)) - (Math.cos(h)*Math.sin(r));
-		out[1][3] = y;
-		out[2][0] = -Math.sin(p);
-		out[2][1] = Math.cos(p)*Math.sin(r);
-		out[2][2] = Math.cos(p)*Math.cos(r);
-		out[2][3] = z;
-		out[3][0] = 0.0;
-		out[3][1] = 0.0;
-		out[3][2] = 0.0;
-		out[3][3] = 1.0;
-
-		return out;
-	}
-
-	private static double[] transform(double[] point, double[] translation, double[] rotation) {
-
-		// Transform a 3D body by rotation and then translation.
-
-		double[][] transform = buildTransform(point, rotation);
-
-		double[][] params = {
-			{translation[0]},
-			{translation[1]},
-			{translation[2]},
-			{1.0}
-		};
-
-		double[][] result = matmul(transform, params);
-
-		double[] out = new double[3];
-
-		out[0] = result[0][0];
-		out[1] = result[1][0];
-		out[2] = result[2][0];
-
-		return out;
-	}
-
-
 	public AutopilotTrackerEnc(DcMotor left, DcMotor right, double ticksPerUnit, BNO055IMU imu, int nSubsteps) {
 		this.left = left;
 		this.right = right;
@@ -121,48 +52,74 @@ public class AutopilotTrackerEnc extends AutopilotTracker{
 	}
 
 
+	// Integrate each update as one exact circular arc (AutopilotPlanarPose.arc) instead of nSubsteps straight steps
+	public void setArcIntegration(boolean arcIntegration) {
+		this.arcIntegration = arcIntegration;
+	}
+
+
+	// Read heading from a background sampler instead of blocking on the IMU in every update
+	public void setImuSampler(AutopilotImuSampler imuSampler) {
+		this.imuSampler = imuSampler;
+	}
+
+
 	public void update() {
 
-		double[] oldRobotAttitude = new double[3];
-		oldRobotAttitude[0] = robotAttitude[0];
-		oldRobotAttitude[1] = robotAttitude[1];
-		oldRobotAttitude[2] = robotAttitude[2];
+		double oldHeading = robotAttitude[0];
 
-		Orientation angles = imu.getAngularOrientation(AxesReference.INTRINSIC, AxesOrder.ZYX, AngleUnit.RADIANS);
-		robotAttitude[0] = angles.firstAngle;
+		long profileNs = (profiler != null) ? System.nanoTime() : 0;
+		if (imuSampler != null) {
+			robotAttitude[0] = readHeading(imuSampler);
+		}
+		else {
+			Orientation angles = imu.getAngularOrientation(AxesReference.INTRINSIC, AxesOrder.ZYX, AngleUnit.RADIANS);
+			robotAttitude[0] = angles.firstAngle;
+		}
+		imuHeading = robotAttitude[0];
+		if (profiler != null) {profileNs = profiler.record(AutopilotLoopProfiler.Stage.TRACKER_IMU, profileNs);}
 		robotAttitude[1] = 0;
 		robotAttitude[2] = 0;
 		for (int i = 0; i < 3; i++) {
 			robotAttitude[i] -= rao[i];
 		}
 
-		long ticksRight = right.getCurrentPosition();
-		long ticksLeft = left.getCurrentPosition();
+		long ticksRight = readEncoder(right);
+		long ticksLeft = readEncoder(left);
+		if (profiler != null) {profiler.record(AutopilotLoopProfiler.Stage.TRACKER_ENCODERS, profileNs);}
 
 		double yval = (((double)(ticksRight - renc) / ticksPerUnit) + ((double)(ticksLeft - lenc) / ticksPerUnit)) / 2.0;
 
 		renc = ticksRight;
 		lenc = ticksLeft;
 
-		double[] translationDeltaPerStep = {0.0, yval / (double)nSubsteps, 0.0};
-		double[] rotationDeltaPerStep = new double[3];
-		for (int i=0; i<3; i++) {
-			// rotationDeltaPerStep * nSubsteps equals the difference between oldRobotAttitude and robotAttitude.
-			rotationDeltaPerStep[i] = (robotAttitude[i] - oldRobotAttitude[i]) / (double)nSubsteps;
+		if (arcIntegration) {
+			AutopilotPlanarPose.arc(robotPosition, 0.0, yval, 0.0, oldHeading, AutopilotPlanarPose.wrapHeading(robotAttitude[0] - oldHeading));
 		}
-
-		for (int i=0; i < nSubsteps; i++) {
-			double[] robotAttitudeThisStep = new double[3];
-
-			for (int j=0; j<3; j++) {
-				// Add (i) mini-steps to the old starting attitude.
-				robotAttitudeThisStep[j] = oldRobotAttitude[j] + (rotationDeltaPerStep[j] * i);
+		else {
+			double translationDeltaPerStep = yval / (double)nSubsteps;
+			// rotationDeltaPerStep * nSubsteps equals the difference between oldHeading and the new heading.
+			double rotationDeltaPerStep = (robotAttitude[0] - oldHeading) / (double)nSubsteps;
+
+			for (int i=0; i < nSubsteps; i++) {
+				// Add (i) mini-steps to the old starting heading.
+				double headingThisStep = oldHeading + (rotationDeltaPerStep * i);
+				AutopilotPlanarPose.translate(robotPosition, 0.0, translationDeltaPerStep, 0.0, headingThisStep);
 			}
-			robotPosition = transform(robotPosition, translationDeltaPerStep, robotAttitudeThisStep);
 		}
 
 	}
 
+	public int getRawEncoders(long[] counts) {
+		counts[0] = lenc;
+		counts[1] = renc;
+		return 2;
+	}
+
+	public double getRawHeading() {
+		return imuHeading;
+	}
+
 	public double[] getRobotPosition() {
 		return robotPosition;
 	}
@@ -172,7 +129,8 @@ public class AutopilotTrackerEnc extends AutopilotTracker{
 	}
 
 	public void setRobotPosition(double[] position) {
-		robotPosition = position;
+		// Copied, since the pose is integrated in place
+		System.arraycopy(position, 0, robotPosition, 0, 3);
 	}
 
 	public void setRobotAttitude(double[] attitude) {
@@ -0,0 +1,175 @@
+package com.evolutionftc.autopilot;
+
+
+// Copyright (c) 2016-2020 Aedan Cullen and/or Evolution Robotics.
+
+
+// Odometry tracker for any layout of three or more dead wheels, not using IMU at all.
+//
+// Each wheel is given by where it sits relative to the robot center and the direction (in the
+// robot frame) in which it counts up. A wheel at (px, py) pointing along (ux, uy) measures
+//     ux * dx + uy * dy + (uy * px - ux * py) * dh
+// for a body move (dx, dy) and turn dh (CCW positive). Stacking one such row per wheel gives a
+// matrix A; the constructor precomputes its least-squares inverse (A^T A)^-1 A^T once, so each
+// update is a 3 x nWheels matrix-vector product. With more than three wheels the extra ones
+// average out encoder noise.
+//
+// The move is applied as one arc over the turn (AutopilotPlanarPose.arc).
+
+import com.qualcomm.robotcore.hardware.DcMotor;
+
+public class AutopilotTrackerMultiOdo extends AutopilotTracker {
+
+    private DcMotor[] wheels;
+    private int nWheels;
+    double ticksPerUnit;
+
+    // 3 x nWheels, row-major: wheel travel to (dx, dy, dh)
+    private double[] solver;
+
+    private long[] encoders;
+    private double[] travel;
+
+    private double[] robotPosition = new double[3];
+    private double[] robotAttitude = new double[3];
+
+    private double deltaX;
+    private double deltaY;
+    private double deltaH;
+
+    //
+    // wheelGeometry[i] = {x, y, directionX, directionY} for wheels[i]: position relative to the
+    // robot center, and the direction in which the wheel counts up (normalized here)
+    //
+    public AutopilotTrackerMultiOdo(DcMotor[] wheels, double[][] wheelGeometry, double ticksPerUnit) {
+        if (wheels.length != wheelGeometry.length) {
+            throw new IllegalArgumentException("Got " + wheels.length + " wheels but " + wheelGeometry.length + " geometries");
+        }
+        this.wheels = wheels.clone();
+        this.nWheels = wheels.length;
+        this.ticksPerUnit = ticksPerUnit;
+        this.encoders = new long[nWheels];
+        this.travel = new double[nWheels];
+
+        double[] a = new double[nWheels * 3];
+        for (int i = 0; i < nWheels; i++) {
+            double[] geometry = wheelGeometry[i];
+            double length = Math.sqrt(Math.pow(geometry[2], 2) + Math.pow(geometry[3], 2));
+            double ux = geometry[2] / length;
+            double uy = geometry[3] / length;
+            a[(i * 3)] = ux;
+            a[(i * 3) + 1] = uy;
+            a[(i * 3) + 2] = (uy * geometry[0]) - (ux * geometry[1]);
+        }
+        this.solver = pseudoInverse(a, nWheels);
+    }
+
+    // (A^T A)^-1 A^T for an n x 3 row-major A
+    private static double[] pseudoInverse(double[] a, int n) {
+        double[] ata = new double[9];
+        for (int i = 0; i < n; i++) {
+            for (int r = 0; r < 3; r++) {
+                for (int c = 0; c < 3; c++) {
+                    ata[(r * 3) + c] += a[(i * 3) + r] * a[(i * 3) + c];
+                }
+            }
+        }
+
+        // Inverse of the symmetric 3 x 3 by cofactors
+        double c00 = (ata[4] * ata[8]) - (ata[5] * ata[7]);
+        double c01 = (ata[5] * ata[6]) - (ata[3] * ata[8]);
+        double c02 = (ata[3] * ata[7]) - (ata[4] * ata[6]);
+        double det = (ata[0] * c00) + (ata[1] * c01) + (ata[2] * c02);
+        double scale = Math.max(Math.max(Math.abs(ata[0]), Math.abs(ata[4])), Math.abs(ata[8]));
+        if (Math.abs(det) <= 1e-9 * scale * scale * scale) {
+            throw new IllegalArgumentException("Wheel layout cannot tell x, y and heading apart");
+        }
+        double[] inverse = {
+                c00, (ata[2] * ata[7]) - (ata[1] * ata[8]), (ata[1] * ata[5]) - (ata[2] * ata[4]),
+                c01, (ata[0] * ata[8]) - (ata[2] * ata[6]), (ata[2] * ata[3]) - (ata[0] * ata[5]),
+                c02, (ata[1] * ata[6]) - (ata[0] * ata[7]), (ata[0] * ata[4]) - (ata[1] * ata[3])
+        };
+        for (int k = 0; k < 9; k++) {
+            inverse[k] /= det;
+        }
+
+        double[] result = new double[3 * n];
+        for (int r = 0; r < 3; r++) {
+            for (int i = 0; i < n; i++) {
+                double sum = 0;
+                for (int k = 0; k < 3; k++) {
+                    sum += inverse[(r * 3) + k] * a[(i * 3) + k];
+                }
+                result[(r * n) + i] = sum;
+            }
+        }
+        return result;
+    }
+
+    public void update() {
+
+        long profileNs = (profiler != null) ? System.nanoTime() : 0;
+        for (int i = 0; i < nWheels; i++) {
+            long ticks = readEncoder(wheels[i]);
+            travel[i] = (double)(ticks - encoders[i]) / ticksPerUnit;
+            encoders[i] = ticks;
+        }
+        if (profiler != null) {profiler.record(AutopilotLoopProfiler.Stage.TRACKER_ENCODERS, profileNs);}
+
+        double dx = 0;
+        double dy = 0;
+        double dh = 0;
+        for (int i = 0; i < nWheels; i++) {
+            dx += solver[i] * travel[i];
+            dy += solver[nWheels + i] * travel[i];
+            dh += solver[(2 * nWheels) + i] * travel[i];
+        }
+
+        deltaX = dx; deltaY = dy; deltaH = dh;
+
+        AutopilotPlanarPose.arc(robotPosition, dx, dy, 0, robotAttitude[0], dh);
+        robotAttitude[0] = AutopilotPlanarPose.wrapHeading(robotAttitude[0] + dh);
+    }
+
+    // Only as many wheels as counts[] has room for are written
+    public int getRawEncoders(long[] counts) {
+        int n = Math.min(nWheels, counts.length);
+        System.arraycopy(encoders, 0, counts, 0, n);
+        return n;
+    }
+
+    public int getWheelCount() {
+        return nWheels;
+    }
+
+    public double[] getRobotPosition() {
+        return robotPosition;
+    }
+
+    public double[] getRobotAttitude() {
+        return robotAttitude;
+    }
+
+    public void setRobotPosition(double[] position) {
+        // Copied, since the pose is integrated in place
+        System.arraycopy(position, 0, robotPosition, 0, 3);
+    }
+
+    public void setRobotAttitude(double[] attitude) {
+        System.arraycopy(attitude, 0, robotAttitude, 0, 3);
+    }
+
+    public double getDeltaX() {
+        return deltaX;
+    }
+    public double getDeltaY() {
+        return deltaY;
+    }
+    public double getDeltaH() {
+        return deltaH;
+    }
+    public double getDeltaPos() {
+        return Math.sqrt(Math.pow(getDeltaX(), 2) + Math.pow(getDeltaY(), 2));
+    }
+
+}
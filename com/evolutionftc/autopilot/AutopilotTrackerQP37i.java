@@ -28,8 +28,11 @@ public class AutopilotTrackerQP37i extends AutopilotTracker {
 	double ticksPerUnit;
 
 	public BNO055IMU imu;
+	private AutopilotImuSampler imuSampler;
+	private double imuHeading;
 
 	int nSubsteps;
+	boolean arcIntegration;
 	
 	private double[] rao = new double[3];
 
@@ -40,84 +43,6 @@ public class AutopilotTrackerQP37i extends AutopilotTracker {
 	private double[] negSensorPosRelativeToRobot = new double[3];
 
 
-	private static double[][] matmul(double[][] firstarray, double[][] secondarray) {
-
-		double [][] result = new double[firstarray.length][secondarray[0].length];
-
-		for (int i = 0; i < firstarray.length; i++) {
-			for (int j = 0; j < secondarray[0].length; j++) {
-				for (int k = 0; k < firstarray[0].length; k++) {
-					result[i][j] += firstarray[i][k] * secondarray[k][j];
-				}
-			}
-		}
-
-		return result;
-	}
-
-	private static double[][] buildTransform(double[] xyz, double[] hpr){
-
-		double[][] out = new double[4][4];
-
-		double x = xyz[0];
-		double y = xyz[1];
-		double z = xyz[2];
-		double h = hpr[0];
-		double p = hpr[1];
-		double r = hpr[2];
-
-                double sinh = Math.sin(h);
-                double cosh = Math.cos(h);
-                double sinp = Math.sin(p);
-                double cosp = Math.cos(p);
-                double sinr = Math.sin(r);
-                double cosr = Math.cos(r);
-
-		out[0][0] = cosh*cosp;
-		out[0][1] = (cosh*sinp*sinr) - (sinh*cosr);
-		out[0][2] = (cosh*sinp*cosr) + (sinh*sinr);
-		out[0][3] = x;
-		out[1][0] = sinh*cosp;
-		out[1][1] = (sinh*sinp*sinr) + (cosh*cosr);
-		out[1][2] = (sinh*sinp*cosr) - (cosh*sinr);
-		out[1][3] = y;
-		out[2][0] = -sinp;
-		out[2][1] = cosp*sinr;
-		out[2][2] = cosp*cosr;
-		out[2][3] = z;
-		out[3][0] = 0.0;
-		out[3][1] = 0.0;
-		out[3][2] = 0.0;
-		out[3][3] = 1.0;
-
-		return out;
-	}
-
-	private static double[] transform(double[] point, double[] translation, double[] rotation) {
-
-		// Transform a 3D body by rotation and then translation.
-
-		double[][] transform = buildTransform(point, rotation);
-
-		double[][] params = {
-			{translation[0]},
-			{translation[1]},
-			{translation[2]},
-			{1.0}
-		};
-
-		double[][] result = matmul(transform, params);
-
-		double[] out = new double[3];
-
-		out[0] = result[0][0];
-		out[1] = result[1][0];
-		out[2] = result[2][0];
-
-		return out;
-	}
-
-
 	public AutopilotTrackerQP37i(DcMotor x, DcMotor y, double[] sensorPosRelativeToRobot, double ticksPerUnit, BNO055IMU imu, int nSubsteps) {
 		this.x = x;
 		this.y = y;
@@ -142,26 +67,44 @@ public class AutopilotTrackerQP37i extends AutopilotTracker {
 	}
 
 
+	// Integrate each update as one exact circular arc (AutopilotPlanarPose.arc) instead of nSubsteps straight steps
+	public void setArcIntegration(boolean arcIntegration) {
+		this.arcIntegration = arcIntegration;
+	}
+
+
+	// Read heading from a background sampler instead of blocking on the IMU in every update
+	public void setImuSampler(AutopilotImuSampler imuSampler) {
+		this.imuSampler = imuSampler;
+	}
+
+
 	public void update() {
 
-		double[] oldRobotAttitude = new double[3];
-		oldRobotAttitude[0] = robotAttitude[0];
-		oldRobotAttitude[1] = robotAttitude[1];
-		oldRobotAttitude[2] = robotAttitude[2];
+		double oldHeading = robotAttitude[0];
 
-		Orientation angles = imu.getAngularOrientation(AxesReference.INTRINSIC, AxesOrder.ZYX, AngleUnit.RADIANS);
-		robotAttitude[0] = angles.firstAngle;
+		long profileNs = (profiler != null) ? System.nanoTime() : 0;
+		if (imuSampler != null) {
+			robotAttitude[0] = readHeading(imuSampler);
+		}
+		else {
+			Orientation angles = imu.getAngularOrientation(AxesReference.INTRINSIC, AxesOrder.ZYX, AngleUnit.RADIANS);
+			robotAttitude[0] = angles.firstAngle;
+		}
+		imuHeading = robotAttitude[0];
+		if (profiler != null) {profileNs = profiler.record(AutopilotLoopProfiler.Stage.TRACKER_IMU, profileNs);}
 		robotAttitude[1] = 0;
 		robotAttitude[2] = 0;
 		for (int i = 0; i < 3; i++) {
 			robotAttitude[i] -= rao[i];
 		}
 
-                // To sensor pos
-                robotPosition = transform(robotPosition, sensorPosRelativeToRobot, robotAttitude);
+		// To sensor pos
+		AutopilotPlanarPose.translate(robotPosition, sensorPosRelativeToRobot[0], sensorPosRelativeToRobot[1], sensorPosRelativeToRobot[2], robotAttitude[0]);
 
-		long ticksX = x.getCurrentPosition();
-		long ticksY = y.getCurrentPosition();
+		long ticksX = readEncoder(x);
+		long ticksY = readEncoder(y);
+		if (profiler != null) {profiler.record(AutopilotLoopProfiler.Stage.TRACKER_ENCODERS, profileNs);}
 
 		double xval = ((double)(ticksX - xenc) / ticksPerUnit);
 		double yval = ((double)(ticksY - yenc) / ticksPerUnit);
@@ -172,25 +115,34 @@ public class AutopilotTrackerQP37i extends AutopilotTracker {
 		if (invertX) {xval = -xval;}
 		if (invertY) {yval = -yval;}
 
-		double[] translationDeltaPerStep = {xval / (double)nSubsteps, yval / (double)nSubsteps, 0.0};
-		double[] rotationDeltaPerStep = new double[3];
-		for (int i=0; i<3; i++) {
-			// rotationDeltaPerStep * nSubsteps equals the difference between oldRobotAttitude and robotAttitude.
-			rotationDeltaPerStep[i] = (robotAttitude[i] - oldRobotAttitude[i]) / (double)nSubsteps;
+		if (arcIntegration) {
+			AutopilotPlanarPose.arc(robotPosition, xval, yval, 0.0, oldHeading, AutopilotPlanarPose.wrapHeading(robotAttitude[0] - oldHeading));
 		}
-
-		for (int i=0; i < nSubsteps; i++) {
-			double[] robotAttitudeThisStep = new double[3];
-
-			for (int j=0; j<3; j++) {
-				// Add (i) mini-steps to the old starting attitude.
-				robotAttitudeThisStep[j] = oldRobotAttitude[j] + (rotationDeltaPerStep[j] * i);
+		else {
+			double xDeltaPerStep = xval / (double)nSubsteps;
+			double yDeltaPerStep = yval / (double)nSubsteps;
+			// rotationDeltaPerStep * nSubsteps equals the difference between oldHeading and the new heading.
+			double rotationDeltaPerStep = (robotAttitude[0] - oldHeading) / (double)nSubsteps;
+
+			for (int i=0; i < nSubsteps; i++) {
+				// Add (i) mini-steps to the old starting heading.
+				double headingThisStep = oldHeading + (rotationDeltaPerStep * i);
+				AutopilotPlanarPose.translate(robotPosition, xDeltaPerStep, yDeltaPerStep, 0.0, headingThisStep);
 			}
-			robotPosition = transform(robotPosition, translationDeltaPerStep, robotAttitudeThisStep);
 		}
 
 		// Back to actual robot pos
-		robotPosition = transform(robotPosition, negSensorPosRelativeToRobot, robotAttitude);
+		AutopilotPlanarPose.translate(robotPosition, negSensorPosRelativeToRobot[0], negSensorPosRelativeToRobot[1], negSensorPosRelativeToRobot[2], robotAttitude[0]);
+	}
+
+	public int getRawEncoders(long[] counts) {
+		counts[0] = xenc;
+		counts[1] = yenc;
+		return 2;
+	}
+
+	public double getRawHeading() {
+		return imuHeading;
 	}
 
 	public double[] getRobotPosition() {
@@ -202,7 +154,8 @@ public class AutopilotTrackerQP37i extends AutopilotTracker {
 	}
 
 	public void setRobotPosition(double[] position) {
-		robotPosition = position;
+		// Copied, since the pose is integrated in place
+		System.arraycopy(position, 0, robotPosition, 0, 3);
 	}
 
 	public void setRobotAttitude(double[] attitude) {
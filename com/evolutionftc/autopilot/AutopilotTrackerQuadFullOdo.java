@@ -39,83 +39,6 @@ public class AutopilotTrackerQuadFullOdo extends AutopilotTracker {
     private double yTheta;
 
 
-    private static double[][] matmul(double[][] firstarray, double[][] secondarray) {
-
-        double [][] result = new double[firstarray.length][secondarray[0].length];
-
-        for (int i = 0; i < firstarray.length; i++) {
-            for (int j = 0; j < secondarray[0].length; j++) {
-                for (int k = 0; k < firstarray[0].length; k++) {
-                    result[i][j] += firstarray[i][k] * secondarray[k][j];
-                }
-            }
-        }
-
-        return result;
-    }
-
-    private static double[][] buildTransform(double[] xyz, double[] hpr){
-
-        double[][] out = new double[4][4];
-
-        double x = xyz[0];
-        double y = xyz[1];
-        double z = xyz[2];
-        double h = hpr[0];
-        double p = hpr[1];
-        double r = hpr[2];
-
-        double sinh = Math.sin(h);
-        double cosh = Math.cos(h);
-        double sinp = Math.sin(p);
-        double cosp = Math.cos(p);
-        double sinr = Math.sin(r);
-        double cosr = Math.cos(r);
-
-        out[0][0] = cosh*cosp;
-        out[0][1] = (cosh*sinp*sinr) - (sinh*cosr);
-        out[0][2] = (cosh*sinp*cosr) + (sinh*sinr);
-        out[0][3] = x;
-        out[1][0] = sinh*cosp;
-        out[1][1] = (sinh*sinp*sinr) + (cosh*cosr);
-        out[1][2] = (sinh*sinp*cosr) - (cosh*sinr);
-        out[1][3] = y;
-        out[2][0] = -sinp;
-        out[2][1] = cosp*sinr;
-        out[2][2] = cosp*cosr;
-        out[2][3] = z;
-        out[3][0] = 0.0;
-        out[3][1] = 0.0;
-        out[3][2] = 0.0;
-        out[3][3] = 1.0;
-
-        return out;
-    }
-
-    private static double[] transform(double[] point, double[] translation, double[] rotation) {
-
-        // Transform a 3D body by rotation and then translation.
-
-        double[][] transform = buildTransform(point, rotation);
-
-        double[][] params = {
-                {translation[0]},
-                {translation[1]},
-                {translation[2]},
-                {1.0}
-        };
-
-        double[][] result = matmul(transform, params);
-
-        double[] out = new double[3];
-
-        out[0] = result[0][0];
-        out[1] = result[1][0];
-        out[2] = result[2][0];
-
-        return out;
-    }
-
     //
     // Set xRadius to the position in the y-direction of the x-encoder relative to the robot center
     // Set yRadius to the position in the x-direction of the y-encoders relative to the robot center (symmetric)
@@ -154,10 +77,12 @@ public class AutopilotTrackerQuadFullOdo extends AutopilotTracker {
 
     public void update() {
 
-        long ticksXF = xF.getCurrentPosition();
-        long ticksXB = xB.getCurrentPosition();
-        long ticksYL = yL.getCurrentPosition();
-        long ticksYR = yR.getCurrentPosition();
+        long profileNs = (profiler != null) ? System.nanoTime() : 0;
+        long ticksXF = readEncoder(xF);
+        long ticksXB = readEncoder(xB);
+        long ticksYL = readEncoder(yL);
+        long ticksYR = readEncoder(yR);
+        if (profiler != null) {profiler.record(AutopilotLoopProfiler.Stage.TRACKER_ENCODERS, profileNs);}
 
         double xFval = ((double)(ticksXF - xencF) / ticksPerUnit);
         double xBval = ((double)(ticksXB - xencB) / ticksPerUnit);
@@ -187,13 +112,17 @@ public class AutopilotTrackerQuadFullOdo extends AutopilotTracker {
 
         deltaX = unitsTranslateX; deltaY = unitsTranslateY; deltaH = dA;
 
-        double[] translationDelta = new double[] {unitsTranslateX, unitsTranslateY, 0};
+        robotAttitude[0] = AutopilotPlanarPose.wrapHeading(robotAttitude[0] + dA);
 
-        robotAttitude[0] += dA;
-        if (robotAttitude[0] < -Math.PI) {robotAttitude[0] += 2*Math.PI;}
-        if (robotAttitude[0] > Math.PI) {robotAttitude[0] -= 2*Math.PI;}
+        AutopilotPlanarPose.translate(robotPosition, unitsTranslateX, unitsTranslateY, 0, robotAttitude[0]);
+    }
 
-        robotPosition = transform(robotPosition, translationDelta, robotAttitude);
+    public int getRawEncoders(long[] counts) {
+        counts[0] = xencF;
+        counts[1] = xencB;
+        counts[2] = yencL;
+        counts[3] = yencR;
+        return 4;
     }
 
     public double[] getRobotPosition() {
@@ -205,7 +134,8 @@ public class AutopilotTrackerQuadFullOdo extends AutopilotTracker {
     }
 
     public void setRobotPosition(double[] position) {
-        robotPosition = position;
+        // Copied, since the pose is integrated in place
+        System.arraycopy(position, 0, robotPosition, 0, 3);
     }
 
     public void setRobotAttitude(double[] attitude) {
@@ -0,0 +1,370 @@
+package com.evolutionftc.autopilot;
+
+
+// Copyright (c) 2016-2020 Aedan Cullen and/or Evolution Robotics.
+
+
+// Runs another tracker's update() on its own fixed-rate thread, so pose integration
+// keeps its sampling rate when the OpMode loop is slowed by telemetry or driver station traffic.
+//
+// The worker publishes each pose through a sequence lock: readers never block, and only
+// retry in the rare case they overlap a write. update() on this object just takes the latest
+// published pose, so it drops into AutopilotHost.communicate() like any other tracker.
+// Deltas are reported as the sum of all worker updates since the previous update() here.
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+public class AutopilotTrackerThread extends AutopilotTracker {
+
+    private final AutopilotTracker tracker;
+    private final long nsPerUpdate;
+
+    private Thread worker;
+    private volatile boolean running;
+    private volatile Throwable failure;
+
+    // Published by the worker; odd sequence means a write is in progress
+    private volatile long sequence;
+    private volatile double publishedX;
+    private volatile double publishedY;
+    private volatile double publishedZ;
+    private volatile double publishedH;
+    private volatile double publishedP;
+    private volatile double publishedR;
+    private volatile double totalDeltaX;
+    private volatile double totalDeltaY;
+    private volatile double totalDeltaH;
+    private volatile double totalDeltaPos;
+    private volatile long publishedUpdates;
+    private volatile long publishedSetCount;
+    private volatile long publishedEncoder0;
+    private volatile long publishedEncoder1;
+    private volatile long publishedEncoder2;
+    private volatile long publishedEncoder3;
+    private volatile int publishedEncoderCount;
+    private volatile double publishedRawHeading;
+
+    // A pose set from the reader, taken whole by the worker before its next update; either
+    // array is null if only the other was set
+    private static class PoseRequest {
+        final long setCount;
+        final double[] position;
+        final double[] attitude;
+
+        PoseRequest(long setCount, double[] position, double[] attitude) {
+            this.setCount = setCount;
+            this.position = position;
+            this.attitude = attitude;
+        }
+    }
+
+    private final AtomicReference<PoseRequest> pendingRequest = new AtomicReference<PoseRequest>();
+    private long setCount;
+
+    // Reader-side snapshot
+    private double[] robotPosition = new double[3];
+    private double[] robotAttitude = new double[3];
+    private double lastTotalDeltaX;
+    private double lastTotalDeltaY;
+    private double lastTotalDeltaH;
+    private double lastTotalDeltaPos;
+    private double deltaX;
+    private double deltaY;
+    private double deltaH;
+    private double deltaPos;
+    private long updatesAtLastRead;
+    private long[] rawEncoders = new long[4];
+    private int nRawEncoders;
+    private double rawHeading = Double.NaN;
+
+    public AutopilotTrackerThread(AutopilotTracker tracker, double updatesPerSecond) {
+        this.tracker = tracker;
+        this.nsPerUpdate = (long)(1e9 / updatesPerSecond);
+        seedSnapshot();
+    }
+
+    // Until the worker publishes, readers see the wrapped tracker's own pose rather than zeros
+    private void seedSnapshot() {
+        System.arraycopy(tracker.getRobotPosition(), 0, robotPosition, 0, 3);
+        System.arraycopy(tracker.getRobotAttitude(), 0, robotAttitude, 0, 3);
+    }
+
+    public AutopilotTracker getTracker() {
+        return tracker;
+    }
+
+    // The wrapped tracker's reads happen on the worker, so they are timed there
+    public void setProfiler(AutopilotLoopProfiler profiler) {
+        tracker.setProfiler(profiler);
+    }
+
+    // The snapshot is acquired on the worker, right before each update of the wrapped tracker.
+    // Set it before start().
+    public void setSensorSnapshot(AutopilotSensorSnapshot sensorSnapshot) {
+        this.sensorSnapshot = sensorSnapshot;
+        tracker.setSensorSnapshot(sensorSnapshot);
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        seedSnapshot();
+        running = true;
+        worker = new Thread(new Runnable() {
+            public void run() {
+                runWorker();
+            }
+        }, "AutopilotTrackerThread");
+        worker.setDaemon(true);
+        worker.setPriority(Thread.MAX_PRIORITY);
+        worker.start();
+    }
+
+    public synchronized void stop() {
+        running = false;
+        if (worker != null) {
+            worker.interrupt();
+            try {
+                worker.join();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            worker = null;
+        }
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    // Number of tracker updates the worker has completed
+    public long getUpdateCount() {
+        return publishedUpdates;
+    }
+
+    private void runWorker() {
+        long writerSequence = sequence;
+        double sumDeltaX = 0;
+        double sumDeltaY = 0;
+        double sumDeltaH = 0;
+        double sumDeltaPos = 0;
+        long nUpdates = 0;
+        long appliedSetCount = 0;
+        long[] encoders = new long[4];
+        long deadline = System.nanoTime();
+
+        try {
+            while (running) {
+                // Taken in one step, so the count published below is always that of a pose applied here
+                PoseRequest request = pendingRequest.getAndSet(null);
+                if (request != null) {
+                    if (request.position != null) {
+                        tracker.setRobotPosition(request.position);
+                    }
+                    if (request.attitude != null) {
+                        tracker.setRobotAttitude(request.attitude);
+                    }
+                    appliedSetCount = request.setCount;
+                }
+
+                if (sensorSnapshot != null) {
+                    sensorSnapshot.acquire();
+                }
+                tracker.update();
+
+                double[] trackerPosition = tracker.getRobotPosition();
+                double[] trackerAttitude = tracker.getRobotAttitude();
+                sumDeltaX += tracker.getDeltaX();
+                sumDeltaY += tracker.getDeltaY();
+                sumDeltaH += tracker.getDeltaH();
+                sumDeltaPos += tracker.getDeltaPos();
+                nUpdates++;
+                int nEncoders = tracker.getRawEncoders(encoders);
+                double heading = tracker.getRawHeading();
+
+                sequence = ++writerSequence;
+                publishedX = trackerPosition[0];
+                publishedY = trackerPosition[1];
+                publishedZ = trackerPosition[2];
+                publishedH = trackerAttitude[0];
+                publishedP = trackerAttitude[1];
+                publishedR = trackerAttitude[2];
+                totalDeltaX = sumDeltaX;
+                totalDeltaY = sumDeltaY;
+                totalDeltaH = sumDeltaH;
+                totalDeltaPos = sumDeltaPos;
+                publishedUpdates = nUpdates;
+                publishedSetCount = appliedSetCount;
+                publishedEncoder0 = encoders[0];
+                publishedEncoder1 = encoders[1];
+                publishedEncoder2 = encoders[2];
+                publishedEncoder3 = encoders[3];
+                publishedEncoderCount = nEncoders;
+                publishedRawHeading = heading;
+                sequence = ++writerSequence;
+
+                deadline += nsPerUpdate;
+                long remaining = deadline - System.nanoTime();
+                if (remaining > 0) {
+                    LockSupport.parkNanos(remaining);
+                }
+                else {
+                    // Overran; don't try to catch up with a burst of back-to-back updates
+                    deadline = System.nanoTime();
+                }
+            }
+        }
+        catch (Throwable t) {
+            failure = t;
+            running = false;
+        }
+    }
+
+    // Take the latest pose published by the worker. Never blocks.
+    public void update() {
+        Throwable workerFailure = failure;
+        if (workerFailure != null) {
+            throw new IllegalStateException("Tracker thread stopped: " + workerFailure, workerFailure);
+        }
+
+        double x, y, z, h, p, r, sumDeltaX, sumDeltaY, sumDeltaH, sumDeltaPos;
+        long nUpdates;
+        long nSets;
+        long encoder0, encoder1, encoder2, encoder3;
+        int nEncoders;
+        double heading;
+        long before;
+        long after;
+        do {
+            before = sequence;
+            x = publishedX;
+            y = publishedY;
+            z = publishedZ;
+            h = publishedH;
+            p = publishedP;
+            r = publishedR;
+            sumDeltaX = totalDeltaX;
+            sumDeltaY = totalDeltaY;
+            sumDeltaH = totalDeltaH;
+            sumDeltaPos = totalDeltaPos;
+            nUpdates = publishedUpdates;
+            nSets = publishedSetCount;
+            encoder0 = publishedEncoder0;
+            encoder1 = publishedEncoder1;
+            encoder2 = publishedEncoder2;
+            encoder3 = publishedEncoder3;
+            nEncoders = publishedEncoderCount;
+            heading = publishedRawHeading;
+            after = sequence;
+        } while ((before & 1) != 0 || before != after);
+
+        if (nUpdates == updatesAtLastRead || nSets != setCount) {
+            // Nothing new, or the worker has not yet picked up a pose set here; keep the current snapshot
+            deltaX = 0;
+            deltaY = 0;
+            deltaH = 0;
+            deltaPos = 0;
+            return;
+        }
+        updatesAtLastRead = nUpdates;
+
+        robotPosition[0] = x;
+        robotPosition[1] = y;
+        robotPosition[2] = z;
+        robotAttitude[0] = h;
+        robotAttitude[1] = p;
+        robotAttitude[2] = r;
+
+        rawEncoders[0] = encoder0;
+        rawEncoders[1] = encoder1;
+        rawEncoders[2] = encoder2;
+        rawEncoders[3] = encoder3;
+        nRawEncoders = nEncoders;
+        rawHeading = heading;
+
+        deltaX = sumDeltaX - lastTotalDeltaX;
+        deltaY = sumDeltaY - lastTotalDeltaY;
+        deltaH = sumDeltaH - lastTotalDeltaH;
+        deltaPos = sumDeltaPos - lastTotalDeltaPos;
+        lastTotalDeltaX = sumDeltaX;
+        lastTotalDeltaY = sumDeltaY;
+        lastTotalDeltaH = sumDeltaH;
+        lastTotalDeltaPos = sumDeltaPos;
+    }
+
+    public double[] getRobotPosition() {
+        return robotPosition;
+    }
+
+    public double[] getRobotAttitude() {
+        return robotAttitude;
+    }
+
+    public void setRobotPosition(double[] position) {
+        System.arraycopy(position, 0, robotPosition, 0, 3);
+        if (running) {
+            request(robotPosition.clone(), null);
+        }
+        else {
+            tracker.setRobotPosition(robotPosition.clone());
+        }
+    }
+
+    public void setRobotAttitude(double[] attitude) {
+        System.arraycopy(attitude, 0, robotAttitude, 0, 3);
+        if (running) {
+            request(null, robotAttitude.clone());
+        }
+        else {
+            tracker.setRobotAttitude(robotAttitude.clone());
+        }
+    }
+
+    // Merged with a request the worker has not taken yet, so setting position then attitude
+    // between two worker updates applies both
+    private void request(double[] position, double[] attitude) {
+        long count = ++setCount;
+        while (true) {
+            PoseRequest previous = pendingRequest.get();
+            double[] nextPosition = position;
+            double[] nextAttitude = attitude;
+            if (previous != null) {
+                if (nextPosition == null) {nextPosition = previous.position;}
+                if (nextAttitude == null) {nextAttitude = previous.attitude;}
+            }
+            if (pendingRequest.compareAndSet(previous, new PoseRequest(count, nextPosition, nextAttitude))) {
+                return;
+            }
+        }
+    }
+
+    // Raw readings behind the latest published pose
+    public int getRawEncoders(long[] counts) {
+        System.arraycopy(rawEncoders, 0, counts, 0, nRawEncoders);
+        return nRawEncoders;
+    }
+
+    public double getRawHeading() {
+        return rawHeading;
+    }
+
+    public double getDeltaX() {
+        return deltaX;
+    }
+
+    public double getDeltaY() {
+        return deltaY;
+    }
+
+    public double getDeltaH() {
+        return deltaH;
+    }
+
+    public double getDeltaPos() {
+        return deltaPos;
+    }
+
+}
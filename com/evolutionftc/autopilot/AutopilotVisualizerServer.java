@@ -0,0 +1,250 @@
+package com.evolutionftc.autopilot;
+
+
+// Copyright (c) 2016-2020 Aedan Cullen and/or Evolution Robotics.
+
+
+// Streams a fixed-size binary pose frame to any number of TCP subscribers
+// (gadgets/visualizer.py, gadgets/visualizer_client.py). Run "adb forward tcp:PORT tcp:PORT"
+// to reach it over USB, or connect to the phone's address over wifi.
+//
+// publish() only copies into a preallocated ring and never blocks or allocates; a background
+// thread drains the ring and does all the socket work. If the ring fills, new frames are
+// dropped (and counted) instead of stalling the control loop. A subscriber that can't keep
+// up misses whole frames, so the stream stays aligned.
+//
+// Frame, 32 bytes, big-endian:
+//   int magic ("APVF"), int sequence, long nanoseconds since start(),
+//   float x, float y, float h, byte status (NavigationStatus ordinal), 3 bytes padding
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+public class AutopilotVisualizerServer {
+
+    public static final int DEFAULT_PORT = 7356;
+    public static final int FRAME_MAGIC = 0x41505646;
+    public static final int FRAME_SIZE = 32;
+
+    private static final int RING_SIZE = 1024;
+    private static final int CLIENT_BUFFER_FRAMES = 256;
+    private static final long DRAIN_INTERVAL_MS = 5;
+
+    private final int port;
+
+    // Single-producer, single-consumer ring; head is written only by publish(), tail only by the worker
+    private final long[] ringTime = new long[RING_SIZE];
+    private final float[] ringX = new float[RING_SIZE];
+    private final float[] ringY = new float[RING_SIZE];
+    private final float[] ringH = new float[RING_SIZE];
+    private final byte[] ringStatus = new byte[RING_SIZE];
+    private volatile long head;
+    private volatile long tail;
+    private volatile long nDropped;
+
+    private long nsAtStart;
+
+    private Thread worker;
+    private volatile boolean running;
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private ArrayList<SocketChannel> clients = new ArrayList<SocketChannel>();
+    private ArrayList<ByteBuffer> clientBuffers = new ArrayList<ByteBuffer>();
+    private ByteBuffer batch = ByteBuffer.allocate(RING_SIZE * FRAME_SIZE);
+
+    public AutopilotVisualizerServer(int port) {
+        this.port = port;
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        try {
+            selector = Selector.open();
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.socket().setReuseAddress(true);
+            serverChannel.socket().bind(new InetSocketAddress(port));
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        }
+        catch (IOException e) {
+            closeQuietly();
+            throw new IllegalStateException("Error starting visualizer stream on port " + port + ": " + e.getMessage());
+        }
+        nsAtStart = System.nanoTime();
+        running = true;
+        worker = new Thread(new Runnable() {
+            public void run() {
+                runWorker();
+            }
+        }, "AutopilotVisualizerServer");
+        worker.setDaemon(true);
+        worker.setPriority(Thread.MIN_PRIORITY);
+        worker.start();
+    }
+
+    public synchronized void stop() {
+        running = false;
+        if (worker != null) {
+            selector.wakeup();
+            try {
+                worker.join();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            worker = null;
+        }
+        closeQuietly();
+    }
+
+    // False after stop(), or if the stream failed on its own
+    public boolean isRunning() {
+        return running;
+    }
+
+    // Port actually bound, useful when constructed with port 0
+    public int getLocalPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    // Frames discarded because the ring was full
+    public long getDroppedCount() {
+        return nDropped;
+    }
+
+    public long getPublishedCount() {
+        return head;
+    }
+
+    // Queue one frame. Called from the control loop; never blocks.
+    public void publish(AutopilotHost.NavigationStatus status, double x, double y, double h) {
+        if (!running) {
+            return;
+        }
+        long slotHead = head;
+        if (slotHead - tail >= RING_SIZE) {
+            nDropped = nDropped + 1;
+            return;
+        }
+        int slot = (int)(slotHead & (RING_SIZE - 1));
+        ringTime[slot] = System.nanoTime() - nsAtStart;
+        ringX[slot] = (float)x;
+        ringY[slot] = (float)y;
+        ringH[slot] = (float)h;
+        ringStatus[slot] = (byte)status.ordinal();
+        head = slotHead + 1;
+    }
+
+    private void runWorker() {
+        try {
+            while (running) {
+                selector.select(DRAIN_INTERVAL_MS);
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (key.isValid() && key.isAcceptable()) {
+                        accept();
+                    }
+                }
+                drain();
+            }
+        }
+        catch (Throwable t) {
+            // The stream is a debugging aid; losing it must not take the OpMode down with it
+            running = false;
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel client = serverChannel.accept();
+        if (client == null) {
+            return;
+        }
+        client.configureBlocking(false);
+        client.socket().setTcpNoDelay(true);
+        clients.add(client);
+        ByteBuffer clientBuffer = ByteBuffer.allocateDirect(CLIENT_BUFFER_FRAMES * FRAME_SIZE);
+        clientBuffer.flip();
+        clientBuffers.add(clientBuffer);
+    }
+
+    // Encode everything queued since the last drain and hand it to each subscriber
+    private void drain() {
+        long slotTail = tail;
+        long slotHead = head;
+        batch.clear();
+        for (long seq = slotTail; seq < slotHead; seq++) {
+            int slot = (int)(seq & (RING_SIZE - 1));
+            batch.putInt(FRAME_MAGIC);
+            batch.putInt((int)seq);
+            batch.putLong(ringTime[slot]);
+            batch.putFloat(ringX[slot]);
+            batch.putFloat(ringY[slot]);
+            batch.putFloat(ringH[slot]);
+            batch.put(ringStatus[slot]);
+            batch.put((byte)0);
+            batch.put((byte)0);
+            batch.put((byte)0);
+        }
+        tail = slotHead;
+        batch.flip();
+
+        for (int i = clients.size() - 1; i >= 0; i--) {
+            SocketChannel client = clients.get(i);
+            ByteBuffer clientBuffer = clientBuffers.get(i);
+            try {
+                // Finish any partly sent frame before adding more
+                client.write(clientBuffer);
+                clientBuffer.compact();
+                int frames = Math.min(batch.remaining(), clientBuffer.remaining()) / FRAME_SIZE;
+                // Newest frames are the most useful to a subscriber that has fallen behind
+                int skip = batch.remaining() - (frames * FRAME_SIZE);
+                batch.position(skip);
+                clientBuffer.put(batch);
+                batch.rewind();
+                clientBuffer.flip();
+                client.write(clientBuffer);
+            }
+            catch (IOException e) {
+                // Subscriber went away
+                try {
+                    client.close();
+                }
+                catch (IOException ignored) {}
+                clients.remove(i);
+                clientBuffers.remove(i);
+            }
+        }
+    }
+
+    private void closeQuietly() {
+        for (SocketChannel client : clients) {
+            try {
+                client.close();
+            }
+            catch (IOException ignored) {}
+        }
+        clients.clear();
+        clientBuffers.clear();
+        try {
+            if (serverChannel != null) {
+                serverChannel.close();
+            }
+            if (selector != null) {
+                selector.close();
+            }
+        }
+        catch (IOException ignored) {}
+    }
+
+}
@@ -0,0 +1,125 @@
+package com.evolutionftc.autopilot;
+
+
+// Copyright (c) 2016-2020 Aedan Cullen and/or Evolution Robotics.
+
+
+// Velocity adjuster that predicts the power needed for the desired speed instead of waiting for
+// an error to build up: power = kStatic + kV * velocity + kA * acceleration, where velocity is the
+// desired fraction of actualPeakRate and acceleration is its change since the last tick. The PID
+// correction of PIDVelocityAdjuster is then applied on top for what the model misses.
+//
+// kStatic, kV and kA can be fitted with characterize() from a flight recording of a ramp test:
+// drive the robot straight with power slowly increasing (and, for kA, with a few step changes),
+// recording each tick with the power applied as the command.
+
+public class FeedforwardVelocityAdjuster extends PIDVelocityAdjuster {
+
+    double kStatic;
+    double kV;
+    double kA;
+
+    //
+    // kStatic: power to just overcome friction
+    // kV: power per unit/second; kA: power per unit/second^2
+    //
+    public FeedforwardVelocityAdjuster(double kStatic, double kV, double kA, double Kp, double Ki, double Kd, double actualPeakRate) {
+        super(Kp, Ki, Kd, actualPeakRate);
+        this.kStatic = kStatic;
+        this.kV = kV;
+        this.kA = kA;
+    }
+
+    double feedforward(double desired, double elapsed) {
+        if (desired == 0) {
+            return 0;
+        }
+        double velocity = desired * actualPeakRate;
+        double acceleration = 0;
+        if (tickedYet && elapsed > 0) {
+            acceleration = (velocity - (desiredAtLastTick * actualPeakRate)) / elapsed;
+        }
+        return (kStatic * Math.signum(velocity)) + (kV * velocity) + (kA * acceleration);
+    }
+
+    //
+    // Least-squares fit of {kStatic, kV, kA} to a recording where the command is the power applied.
+    // Speed and acceleration come from central differences of the tracked position; ticks slower
+    // than minSpeed (units/second) are left out, since static friction dominates there.
+    //
+    public static double[] characterize(AutopilotFlightRecorder recording, double minSpeed) {
+        int n = recording.size();
+        double[] speed = new double[n];
+        for (int i = 1; i < n - 1; i++) {
+            double seconds = (recording.getTime(i + 1) - recording.getTime(i - 1)) / 1e9;
+            double dx = recording.getPose(i + 1, 0) - recording.getPose(i - 1, 0);
+            double dy = recording.getPose(i + 1, 1) - recording.getPose(i - 1, 1);
+            speed[i] = (seconds > 0) ? Math.sqrt((dx * dx) + (dy * dy)) / seconds : 0;
+        }
+
+        // Normal equations (A^T A) k = A^T b over rows [1, v, a]
+        double[][] ata = new double[3][3];
+        double[] atb = new double[3];
+        int nUsed = 0;
+        for (int i = 2; i < n - 2; i++) {
+            double seconds = (recording.getTime(i + 1) - recording.getTime(i - 1)) / 1e9;
+            if (speed[i] < minSpeed || seconds <= 0) {
+                continue;
+            }
+            double power = Math.sqrt(Math.pow(recording.getCommand(i, 0), 2) + Math.pow(recording.getCommand(i, 1), 2));
+            double[] row = {1, speed[i], (speed[i + 1] - speed[i - 1]) / seconds};
+            for (int r = 0; r < 3; r++) {
+                for (int c = 0; c < 3; c++) {
+                    ata[r][c] += row[r] * row[c];
+                }
+                atb[r] += row[r] * power;
+            }
+            nUsed++;
+        }
+        if (nUsed < 3) {
+            throw new IllegalStateException("Not enough moving ticks in recording to characterize (" + nUsed + ")");
+        }
+
+        // A ramp with no acceleration leaves kA unconstrained; a small ridge keeps it near zero then
+        for (int r = 0; r < 3; r++) {
+            ata[r][r] += 1e-9 * (ata[r][r] + 1);
+        }
+        return solve3(ata, atb);
+    }
+
+    // Gaussian elimination with partial pivoting
+    private static double[] solve3(double[][] m, double[] v) {
+        for (int col = 0; col < 3; col++) {
+            int pivot = col;
+            for (int r = col + 1; r < 3; r++) {
+                if (Math.abs(m[r][col]) > Math.abs(m[pivot][col])) {
+                    pivot = r;
+                }
+            }
+            double[] swapRow = m[col];
+            m[col] = m[pivot];
+            m[pivot] = swapRow;
+            double swap = v[col];
+            v[col] = v[pivot];
+            v[pivot] = swap;
+
+            for (int r = col + 1; r < 3; r++) {
+                double factor = m[r][col] / m[col][col];
+                for (int c = col; c < 3; c++) {
+                    m[r][c] -= factor * m[col][c];
+                }
+                v[r] -= factor * v[col];
+            }
+        }
+        double[] k = new double[3];
+        for (int r = 2; r >= 0; r--) {
+            double sum = v[r];
+            for (int c = r + 1; c < 3; c++) {
+                sum -= m[r][c] * k[c];
+            }
+            k[r] = sum / m[r][r];
+        }
+        return k;
+    }
+
+}
@@ -2,7 +2,10 @@ package com.evolutionftc.autopilot;
 
 public class PIDVelocityAdjuster {
 
-    long timeAtLastTick = -1;
+    AutopilotClock clock = AutopilotClock.SYSTEM;
+
+    long timeAtLastTick;
+    boolean tickedYet;
     double desiredAtLastTick;
     double outputAtLastTick;
     double deltaDump;
@@ -20,22 +23,27 @@ public class PIDVelocityAdjuster {
         this.actualPeakRate = actualPeakRate;
     }
 
+    public void setClock(AutopilotClock clock) {
+        this.clock = clock;
+    }
+
     public void reset() {
         integral = 0;
-        timeAtLastTick = -1;
+        tickedYet = false;
+        deltaDump = 0;
     }
 
     public double adjust(double desired, double actualDelta) {
-        long timeNow = System.nanoTime() / 1000000;
+        long timeNow = clock.nanoTime();
 
         if (desired == 0) {
             reset();
         }
-        double output = desired;
-        if (timeAtLastTick > 0) {
+        double output = feedforward(desired, 0);
+        if (tickedYet) {
 
-            long elapsed = (timeNow - timeAtLastTick) / 1000;
-            if (elapsed == 0) { // "zero elapsed time", so ignore this tick (no update)
+            double elapsed = (timeNow - timeAtLastTick) / 1e9;
+            if (elapsed <= 0) { // "zero elapsed time", so ignore this tick (no update)
                 // Need to "dump" this delta to not lose it in the magic timewarp
                 deltaDump += actualDelta;
                 return Math.max(0.0, Math.min(1.0, outputAtLastTick));
@@ -43,25 +51,57 @@ public class PIDVelocityAdjuster {
             // elapsed != 0, so apply and reset the dump
             actualDelta += deltaDump;
             deltaDump = 0;
-            double actual = (actualDelta / elapsed) / actualPeakRate;
-            double error = actual - desiredAtLastTick;
-
-            if (Kp != 0) {
-                output -= error * Kp;
-            }
+            output = correct(desired, actualDelta, elapsed);
+        }
+        timeAtLastTick = timeNow;
+        tickedYet = true;
+        desiredAtLastTick = desired;
+        outputAtLastTick = output;
 
-            if (Ki != 0) {
-                integral += error * elapsed;
-                integral = Math.max(-desired, Math.min(1.0 - desired, integral * Ki)) / Ki;
-                output -= integral * Ki;
-            }
+        return Math.max(0.0, Math.min(1.0, output));
+    }
 
-            if (output == 0) { output = 0.001; }
+    // For a loop run at a known rate: elapsedSeconds is the time since the previous call
+    public double adjust(double desired, double actualDelta, double elapsedSeconds) {
+        if (desired == 0) {
+            reset();
         }
-        timeAtLastTick = timeNow;
+        double output = feedforward(desired, 0);
+        if (tickedYet && elapsedSeconds > 0) {
+            output = correct(desired, actualDelta, elapsedSeconds);
+        }
+        timeAtLastTick = clock.nanoTime();
+        tickedYet = true;
         desiredAtLastTick = desired;
         outputAtLastTick = output;
 
         return Math.max(0.0, Math.min(1.0, output));
     }
+
+    // Open-loop power for the desired fraction of actualPeakRate, before correction
+    double feedforward(double desired, double elapsed) {
+        return desired;
+    }
+
+    private double correct(double desired, double actualDelta, double elapsed) {
+        double base = feedforward(desired, elapsed);
+        double output = base;
+        double actual = (actualDelta / elapsed) / actualPeakRate;
+        double error = actual - desiredAtLastTick;
+
+        if (Kp != 0) {
+            output -= error * Kp;
+        }
+
+        if (Ki != 0) {
+            integral += error * elapsed;
+            // Anti-windup: the integral may move the feedforward output anywhere in [0, 1], no further
+            double correction = Math.max(-base, Math.min(1.0 - base, -integral * Ki));
+            integral = -correction / Ki;
+            output += correction;
+        }
+
+        if (output == 0) { output = 0.001; }
+        return output;
+    }
 }
@@ -0,0 +1,405 @@
+package com.evolutionftc.autopilot;
+
+
+// Copyright (c) 2016-2020 Aedan Cullen and/or Evolution Robotics.
+
+
+// Searches for navigation gains by running a path in many simulated AutopilotSystems at once,
+// spread over a fork-join pool (all cores by default). Meant for a workstation, not the robot.
+//
+// Give a range to each parameter to tune with setRange(); the rest keep the path file's values.
+// Each candidate runs the whole path in its own simulator from the factory and is scored on
+//   seconds to finish, how far the robot ran past each target along its approach, and how many
+//   extra times it had to settle back inside navigationUnitsToStable (oscillation),
+// weighted by setWeights(); lower is better. A candidate that doesn't finish within
+// setMaxSeconds() is charged twice that time.
+//
+// There is no Kd to tune: PIDVelocityAdjuster takes one but has no derivative term, so
+// candidates are run with Kd = 0.
+//
+// Search by grid, uniform random sampling, or cmaSearch(): a simplified CMA-ES with a
+// diagonal covariance, which re-centres a Gaussian on the best quarter of each generation.
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+public class AutopilotAutotuner {
+
+    public enum Parameter {NAVIGATION_GAIN, ORIENTATION_GAIN, NAVIGATION_MIN, NAVIGATION_MAX, PID_KP, PID_KI};
+
+    public interface SimulationFactory {
+        // A fresh simulator and system on simulated hardware, set up as on the robot but with no path begun.
+        // Called from pool threads, so it must not share mutable state between the simulators it builds.
+        AutopilotSimulator create();
+    }
+
+    public static class Result {
+        // Indexed by Parameter ordinal; untuned parameters are NaN
+        public double[] values;
+        public double score;
+        public double seconds;
+        public double overshoot;
+        public int extraSettles;
+        public boolean completed;
+
+        public String toString() {
+            StringBuilder out = new StringBuilder();
+            for (Parameter parameter : Parameter.values()) {
+                if (!Double.isNaN(values[parameter.ordinal()])) {
+                    out.append(parameter.toString().toLowerCase()).append('=').append(values[parameter.ordinal()]).append(' ');
+                }
+            }
+            out.append("score=").append(score);
+            out.append(" seconds=").append(seconds);
+            out.append(" overshoot=").append(overshoot);
+            out.append(" extraSettles=").append(extraSettles);
+            if (!completed) {
+                out.append(" (did not finish)");
+            }
+            return out.toString();
+        }
+    }
+
+    private static final int N_PARAMETERS = Parameter.values().length;
+
+    private SimulationFactory factory;
+    private String pathName;
+    private byte[] pathBytes;
+    private ForkJoinPool pool;
+
+    private double[] rangeMin = new double[N_PARAMETERS];
+    private double[] rangeMax = new double[N_PARAMETERS];
+    private boolean[] tuned = new boolean[N_PARAMETERS];
+
+    private double pidPeakRate = 1;
+    private double maxSeconds = 30;
+    private double timeWeight = 1;
+    private double overshootWeight = 1;
+    private double settleWeight = 0.5;
+
+    private long nEvaluated;
+
+    public AutopilotAutotuner(SimulationFactory factory, File pathFile) {
+        this(factory, pathFile.getName(), readFile(pathFile));
+    }
+
+    // pathBytes holds a path file (CSV or compiled); it is loaded afresh for every candidate
+    public AutopilotAutotuner(SimulationFactory factory, String pathName, byte[] pathBytes) {
+        this.factory = factory;
+        this.pathName = pathName;
+        this.pathBytes = pathBytes;
+        this.pool = new ForkJoinPool();
+    }
+
+    private static byte[] readFile(File pathFile) {
+        try {
+            InputStream ins = new FileInputStream(pathFile);
+            try {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buffer = new byte[8192];
+                int n;
+                while ((n = ins.read(buffer)) != -1) {
+                    out.write(buffer, 0, n);
+                }
+                return out.toByteArray();
+            }
+            finally {
+                ins.close();
+            }
+        }
+        catch (IOException e) {
+            throw new IllegalStateException("Error loading path file: " + e.getMessage());
+        }
+    }
+
+    public void setParallelism(int nThreads) {
+        pool.shutdown();
+        pool = new ForkJoinPool(nThreads);
+    }
+
+    public void setRange(Parameter parameter, double min, double max) {
+        rangeMin[parameter.ordinal()] = min;
+        rangeMax[parameter.ordinal()] = max;
+        tuned[parameter.ordinal()] = true;
+    }
+
+    // Passed to setupVelocityPID when any PID gain is tuned
+    public void setPidPeakRate(double pidPeakRate) {
+        this.pidPeakRate = pidPeakRate;
+    }
+
+    public void setMaxSeconds(double maxSeconds) {
+        this.maxSeconds = maxSeconds;
+    }
+
+    public void setWeights(double timeWeight, double overshootWeight, double settleWeight) {
+        this.timeWeight = timeWeight;
+        this.overshootWeight = overshootWeight;
+        this.settleWeight = settleWeight;
+    }
+
+    // Simulations run so far
+    public long getEvaluationCount() {
+        return nEvaluated;
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    private int[] tunedParameters() {
+        int n = 0;
+        for (int i = 0; i < N_PARAMETERS; i++) {
+            if (tuned[i]) {n++;}
+        }
+        if (n == 0) {
+            throw new IllegalStateException("No parameter ranges set; call setRange() first");
+        }
+        int[] indices = new int[n];
+        n = 0;
+        for (int i = 0; i < N_PARAMETERS; i++) {
+            if (tuned[i]) {indices[n++] = i;}
+        }
+        return indices;
+    }
+
+    private double[] newCandidate() {
+        double[] values = new double[N_PARAMETERS];
+        Arrays.fill(values, Double.NaN);
+        return values;
+    }
+
+    // Every combination of pointsPerAxis evenly spaced values across each range
+    public Result gridSearch(int pointsPerAxis) {
+        int[] parameters = tunedParameters();
+        double nCandidates = Math.pow(pointsPerAxis, parameters.length);
+        if (nCandidates > 1e6) {
+            throw new IllegalArgumentException("Grid of " + (long)nCandidates + " candidates is too large; use fewer points or randomSearch");
+        }
+        double[][] candidates = new double[(int)nCandidates][];
+        for (int c = 0; c < candidates.length; c++) {
+            double[] values = newCandidate();
+            int rest = c;
+            for (int p : parameters) {
+                int step = rest % pointsPerAxis;
+                rest /= pointsPerAxis;
+                double fraction = (pointsPerAxis == 1) ? 0.5 : (double)step / (pointsPerAxis - 1);
+                values[p] = rangeMin[p] + (fraction * (rangeMax[p] - rangeMin[p]));
+            }
+            candidates[c] = values;
+        }
+        return best(evaluateAll(candidates));
+    }
+
+    public Result randomSearch(int nCandidates, long seed) {
+        int[] parameters = tunedParameters();
+        Random random = new Random(seed);
+        double[][] candidates = new double[nCandidates][];
+        for (int c = 0; c < nCandidates; c++) {
+            double[] values = newCandidate();
+            for (int p : parameters) {
+                values[p] = rangeMin[p] + (random.nextDouble() * (rangeMax[p] - rangeMin[p]));
+            }
+            candidates[c] = values;
+        }
+        return best(evaluateAll(candidates));
+    }
+
+    public Result cmaSearch(int nGenerations, int populationSize, long seed) {
+        int[] parameters = tunedParameters();
+        Random random = new Random(seed);
+        int nElite = Math.max(2, populationSize / 4);
+
+        double[] mean = new double[N_PARAMETERS];
+        double[] sigma = new double[N_PARAMETERS];
+        for (int p : parameters) {
+            mean[p] = (rangeMin[p] + rangeMax[p]) / 2;
+            sigma[p] = (rangeMax[p] - rangeMin[p]) / 4;
+        }
+
+        Result bestSoFar = null;
+        for (int generation = 0; generation < nGenerations; generation++) {
+            double[][] candidates = new double[populationSize][];
+            for (int c = 0; c < populationSize; c++) {
+                double[] values = newCandidate();
+                for (int p : parameters) {
+                    double value = mean[p] + (random.nextGaussian() * sigma[p]);
+                    values[p] = Math.max(rangeMin[p], Math.min(rangeMax[p], value));
+                }
+                candidates[c] = values;
+            }
+            Result[] results = evaluateAll(candidates);
+            sortByScore(results);
+            if (bestSoFar == null || results[0].score < bestSoFar.score) {
+                bestSoFar = results[0];
+            }
+
+            // Re-fit the distribution to the elite
+            for (int p : parameters) {
+                double sum = 0;
+                for (int e = 0; e < nElite; e++) {
+                    sum += results[e].values[p];
+                }
+                double eliteMean = sum / nElite;
+                double sumSquares = 0;
+                for (int e = 0; e < nElite; e++) {
+                    double d = results[e].values[p] - eliteMean;
+                    sumSquares += d * d;
+                }
+                mean[p] = eliteMean;
+                // Keep a little spread so the search can't collapse onto one point early
+                sigma[p] = Math.max(Math.sqrt(sumSquares / nElite), (rangeMax[p] - rangeMin[p]) * 1e-3);
+            }
+        }
+        return bestSoFar;
+    }
+
+    private static void sortByScore(Result[] results) {
+        Arrays.sort(results, new Comparator<Result>() {
+            public int compare(Result a, Result b) {
+                return Double.compare(a.score, b.score);
+            }
+        });
+    }
+
+    private static Result best(Result[] results) {
+        Result best = results[0];
+        for (Result result : results) {
+            if (result.score < best.score) {
+                best = result;
+            }
+        }
+        return best;
+    }
+
+    public Result[] evaluateAll(double[][] candidates) {
+        Result[] results = new Result[candidates.length];
+        pool.invoke(new EvaluateTask(candidates, results, 0, candidates.length));
+        nEvaluated += candidates.length;
+        return results;
+    }
+
+    private class EvaluateTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private double[][] candidates;
+        private Result[] results;
+        private int from;
+        private int to;
+
+        EvaluateTask(double[][] candidates, Result[] results, int from, int to) {
+            this.candidates = candidates;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        protected void compute() {
+            if (to - from <= 1) {
+                // An empty candidate set has nothing to split
+                if (to > from) {
+                    results[from] = evaluate(candidates[from]);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new EvaluateTask(candidates, results, from, middle),
+                    new EvaluateTask(candidates, results, middle, to));
+        }
+    }
+
+    private double valueOr(double[] values, Parameter parameter, double otherwise) {
+        double value = values[parameter.ordinal()];
+        return Double.isNaN(value) ? otherwise : value;
+    }
+
+    // Run the whole path once with these gains
+    public Result evaluate(double[] values) {
+        AutopilotSimulator simulator = factory.create();
+        AutopilotSystem system = simulator.getSystem();
+        AutopilotHost host = system.host;
+
+        AutopilotPath path = new AutopilotPath(pathName, new AutopilotSimTelemetry(), new ByteArrayInputStream(pathBytes));
+        for (int i = 0; i < path.getSegmentCount(); i++) {
+            AutopilotSegment segment = path.getSegment(i);
+            segment.navigationGain = valueOr(values, Parameter.NAVIGATION_GAIN, segment.navigationGain);
+            segment.orientationGain = valueOr(values, Parameter.ORIENTATION_GAIN, segment.orientationGain);
+            segment.navigationMin = valueOr(values, Parameter.NAVIGATION_MIN, segment.navigationMin);
+            segment.navigationMax = valueOr(values, Parameter.NAVIGATION_MAX, segment.navigationMax);
+        }
+        if (tuned[Parameter.PID_KP.ordinal()] || tuned[Parameter.PID_KI.ordinal()]) {
+            host.setupVelocityPID(valueOr(values, Parameter.PID_KP, 0), valueOr(values, Parameter.PID_KI, 0), 0, pidPeakRate);
+        }
+        system.beginPathTravel(path);
+
+        int lastIndex = -1;
+        double startX = 0;
+        double startY = 0;
+        boolean inside = false;
+        // Counted per segment, so a segment that never settles (skipped, or left without
+        // stopping) doesn't hide a re-settle on another
+        int settlesInSegment = 0;
+        int extraSettles = 0;
+        double overshoot = 0;
+
+        while (!system.isPathComplete() && simulator.getElapsedSeconds() < maxSeconds) {
+            simulator.tick();
+
+            double[] robotPosition = host.getRobotPosition();
+            int index = path.getCurrentSegmentIndex();
+            if (index != lastIndex) {
+                lastIndex = index;
+                startX = robotPosition[0];
+                startY = robotPosition[1];
+                inside = false;
+                extraSettles += Math.max(0, settlesInSegment - 1);
+                settlesInSegment = 0;
+            }
+            if (host.getNavigationStatus() != AutopilotHost.NavigationStatus.RUNNING || !host.useTranslation) {
+                continue;
+            }
+
+            double[] target = host.getNavigationTarget();
+            double errorX = robotPosition[0] - target[0];
+            double errorY = robotPosition[1] - target[1];
+            double distance = Math.sqrt((errorX * errorX) + (errorY * errorY));
+            if (distance < host.navigationUnitsToStable) {
+                if (!inside) {
+                    settlesInSegment++;
+                    inside = true;
+                }
+            }
+            else {
+                inside = false;
+            }
+
+            // Distance past the target, measured along the line the segment approached it on
+            double approachX = target[0] - startX;
+            double approachY = target[1] - startY;
+            double approachLength = Math.sqrt((approachX * approachX) + (approachY * approachY));
+            if (approachLength > 0) {
+                overshoot = Math.max(overshoot, ((errorX * approachX) + (errorY * approachY)) / approachLength);
+            }
+        }
+
+        Result result = new Result();
+        result.values = values;
+        result.completed = system.isPathComplete();
+        result.seconds = simulator.getElapsedSeconds();
+        result.overshoot = overshoot;
+        result.extraSettles = extraSettles + Math.max(0, settlesInSegment - 1);
+        double chargedSeconds = result.completed ? result.seconds : 2 * maxSeconds;
+        result.score = (timeWeight * chargedSeconds) + (overshootWeight * overshoot) + (settleWeight * result.extraSettles);
+        return result;
+    }
+
+}
@@ -0,0 +1,122 @@
+package com.evolutionftc.autopilot;
+
+
+// Copyright (c) 2016-2020 Aedan Cullen and/or Evolution Robotics.
+
+
+// Feeds a flight recording's raw encoder counts and IMU headings back through a tracker,
+// as fast as the CPU allows, and compares the resulting track with the recorded one.
+// Nothing is allocated per tick, so a tracker change can be checked against a whole match
+// in milliseconds instead of on the robot.
+//
+// Build the tracker to test on getMotors() and getImu(), passing the motors in the order
+// the recorded tracker took its encoders (the order of its constructor), e.g.
+//
+//     AutopilotReplay replay = new AutopilotReplay(AutopilotFlightRecorder.readFrom(file));
+//     AutopilotSimMotor[] m = replay.getMotors();
+//     AutopilotTrackerTripleOdo tracker = new AutopilotTrackerTripleOdo(m[0], m[1], m[2], 4.1, 7.0, 1000);
+//     double rmsError = replay.run(tracker);
+//
+// The tracker starts from the recorded pose of the first tick, so only its integration
+// differs from the recording.
+
+public class AutopilotReplay {
+
+    private AutopilotFlightRecorder recording;
+    private AutopilotSimMotor[] motors;
+    private AutopilotSimIMU imu = new AutopilotSimIMU();
+
+    // Track produced by the last run()
+    private double[] replayedPose;
+
+    private double rmsPositionError;
+    private double maxPositionError;
+    private double finalHeadingError;
+
+    public AutopilotReplay(AutopilotFlightRecorder recording) {
+        if (recording.size() == 0) {
+            throw new UnsupportedOperationException("Flight recording is empty");
+        }
+        this.recording = recording;
+        this.motors = new AutopilotSimMotor[recording.getEncoderCount()];
+        for (int i = 0; i < motors.length; i++) {
+            motors[i] = new AutopilotSimMotor("replay" + i);
+        }
+        this.replayedPose = new double[recording.size() * 3];
+    }
+
+    public AutopilotSimMotor[] getMotors() {
+        return motors;
+    }
+
+    public AutopilotSimIMU getImu() {
+        return imu;
+    }
+
+    public AutopilotFlightRecorder getRecording() {
+        return recording;
+    }
+
+    private void applyTick(int i) {
+        for (int j = 0; j < motors.length; j++) {
+            motors[j].setCurrentPosition((int)recording.getEncoder(i, j));
+        }
+        double heading = recording.getRawHeading(i);
+        if (!Double.isNaN(heading)) {
+            imu.setHeading(heading);
+        }
+    }
+
+    // Replay every tick through the tracker; returns the RMS distance from the recorded track
+    public double run(AutopilotTracker tracker) {
+        int n = recording.size();
+
+        // Let the tracker latch the first readings, then put it on the recorded starting pose
+        applyTick(0);
+        tracker.update();
+        tracker.setRobotPosition(new double[] {recording.getPose(0, 0), recording.getPose(0, 1), 0});
+        tracker.setRobotAttitude(new double[] {recording.getPose(0, 2), 0, 0});
+
+        double sumSquaredError = 0;
+        maxPositionError = 0;
+        for (int i = 0; i < n; i++) {
+            if (i > 0) {
+                applyTick(i);
+                tracker.update();
+            }
+            double[] robotPosition = tracker.getRobotPosition();
+            double[] robotAttitude = tracker.getRobotAttitude();
+            replayedPose[i * 3] = robotPosition[0];
+            replayedPose[(i * 3) + 1] = robotPosition[1];
+            replayedPose[(i * 3) + 2] = robotAttitude[0];
+
+            double errorX = robotPosition[0] - recording.getPose(i, 0);
+            double errorY = robotPosition[1] - recording.getPose(i, 1);
+            double squaredError = (errorX * errorX) + (errorY * errorY);
+            sumSquaredError += squaredError;
+            maxPositionError = Math.max(maxPositionError, Math.sqrt(squaredError));
+        }
+
+        rmsPositionError = Math.sqrt(sumSquaredError / n);
+        finalHeadingError = AutopilotPlanarPose.wrapHeading(replayedPose[((n - 1) * 3) + 2] - recording.getPose(n - 1, 2));
+        return rmsPositionError;
+    }
+
+    // 0, 1, 2 are x, y, h, as replayed by the last run()
+    public double getReplayedPose(int i, int axis) {
+        return replayedPose[(i * 3) + axis];
+    }
+
+    public double getRmsPositionError() {
+        return rmsPositionError;
+    }
+
+    public double getMaxPositionError() {
+        return maxPositionError;
+    }
+
+    public double getFinalHeadingError() {
+        return finalHeadingError;
+    }
+
+}
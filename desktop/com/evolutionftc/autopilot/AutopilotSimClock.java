@@ -0,0 +1,30 @@
+package com.evolutionftc.autopilot;
+
+
+// Copyright (c) 2016-2020 Aedan Cullen and/or Evolution Robotics.
+
+
+// Virtual clock for simulation: time only moves when advance() is called.
+// AutopilotSimulator advances it by one tick period after every tick.
+
+public class AutopilotSimClock extends AutopilotClock {
+
+    private long ns;
+
+    public long nanoTime() {
+        return ns;
+    }
+
+    public void advance(double seconds) {
+        ns += (long)(seconds * 1e9);
+    }
+
+    public void advanceNanos(long nanos) {
+        ns += nanos;
+    }
+
+    public void reset() {
+        ns = 0;
+    }
+
+}
@@ -0,0 +1,157 @@
+package com.evolutionftc.autopilot;
+
+
+// Copyright (c) 2016-2020 Aedan Cullen and/or Evolution Robotics.
+
+
+// Stand-in BNO055IMU for running the autopilot off the robot.
+// Reports whatever heading was last set; only the orientation calls used by the trackers do anything.
+
+import com.qualcomm.hardware.bosch.BNO055IMU;
+
+import org.firstinspires.ftc.robotcore.external.navigation.Acceleration;
+import org.firstinspires.ftc.robotcore.external.navigation.AngleUnit;
+import org.firstinspires.ftc.robotcore.external.navigation.AngularVelocity;
+import org.firstinspires.ftc.robotcore.external.navigation.AxesOrder;
+import org.firstinspires.ftc.robotcore.external.navigation.AxesReference;
+import org.firstinspires.ftc.robotcore.external.navigation.MagneticFlux;
+import org.firstinspires.ftc.robotcore.external.navigation.Orientation;
+import org.firstinspires.ftc.robotcore.external.navigation.Position;
+import org.firstinspires.ftc.robotcore.external.navigation.Quaternion;
+import org.firstinspires.ftc.robotcore.external.navigation.Temperature;
+import org.firstinspires.ftc.robotcore.external.navigation.Velocity;
+
+public class AutopilotSimIMU implements BNO055IMU {
+
+    private double heading;
+
+    private Parameters parameters = new Parameters();
+    private Orientation orientation = new Orientation();
+
+    public void setHeading(double heading) {
+        this.heading = AutopilotPlanarPose.wrapHeading(heading);
+    }
+
+    public double getHeading() {
+        return heading;
+    }
+
+    // Filled in place on every call, so reading the heading never allocates; callers copy out
+    // the angle they need, as the trackers do
+    public Orientation getAngularOrientation(AxesReference reference, AxesOrder order, AngleUnit angleUnit) {
+        orientation.axesReference = reference;
+        orientation.axesOrder = order;
+        orientation.angleUnit = angleUnit;
+        orientation.firstAngle = (float)(angleUnit == AngleUnit.DEGREES ? Math.toDegrees(heading) : heading);
+        orientation.secondAngle = 0;
+        orientation.thirdAngle = 0;
+        orientation.acquisitionTime = System.nanoTime();
+        return orientation;
+    }
+
+    public Orientation getAngularOrientation() {
+        return getAngularOrientation(AxesReference.INTRINSIC, AxesOrder.ZYX, AngleUnit.RADIANS);
+    }
+
+    public boolean initialize(Parameters parameters) {
+        this.parameters = parameters;
+        return true;
+    }
+
+    public Parameters getParameters() {
+        return parameters;
+    }
+
+    public void close() {}
+
+    public Acceleration getOverallAcceleration() {
+        return new Acceleration();
+    }
+
+    public AngularVelocity getAngularVelocity() {
+        return new AngularVelocity();
+    }
+
+    public Acceleration getLinearAcceleration() {
+        return new Acceleration();
+    }
+
+    public Acceleration getGravity() {
+        return new Acceleration();
+    }
+
+    public Temperature getTemperature() {
+        return new Temperature();
+    }
+
+    public MagneticFlux getMagneticFieldStrength() {
+        return new MagneticFlux();
+    }
+
+    public Quaternion getQuaternionOrientation() {
+        return new Quaternion();
+    }
+
+    public Position getPosition() {
+        return new Position();
+    }
+
+    public Velocity getVelocity() {
+        return new Velocity();
+    }
+
+    public Acceleration getAcceleration() {
+        return new Acceleration();
+    }
+
+    public void startAccelerationIntegration(Position initialPosition, Velocity initialVelocity, int msPollInterval) {}
+
+    public void stopAccelerationIntegration() {}
+
+    public SystemStatus getSystemStatus() {
+        return SystemStatus.RUNNING_FUSION;
+    }
+
+    public SystemError getSystemError() {
+        return SystemError.NO_ERROR;
+    }
+
+    public CalibrationStatus getCalibrationStatus() {
+        return new CalibrationStatus(0xFF);
+    }
+
+    public boolean isSystemCalibrated() {
+        return true;
+    }
+
+    public boolean isGyroCalibrated() {
+        return true;
+    }
+
+    public boolean isAccelerometerCalibrated() {
+        return true;
+    }
+
+    public boolean isMagnetometerCalibrated() {
+        return true;
+    }
+
+    public CalibrationData readCalibrationData() {
+        return new CalibrationData();
+    }
+
+    public void writeCalibrationData(CalibrationData data) {}
+
+    public byte read8(Register register) {
+        return 0;
+    }
+
+    public byte[] read(Register register, int cb) {
+        return new byte[cb];
+    }
+
+    public void write8(Register register, int bVal) {}
+
+    public void write(Register register, byte[] data) {}
+
+}
@@ -0,0 +1,131 @@
+package com.evolutionftc.autopilot;
+
+
+// Copyright (c) 2016-2020 Aedan Cullen and/or Evolution Robotics.
+
+
+// Stand-in DcMotor for running the autopilot off the robot.
+// The encoder count is whatever the simulator (or a test) last set; power is only stored.
+
+import com.qualcomm.robotcore.hardware.DcMotor;
+import com.qualcomm.robotcore.hardware.DcMotorController;
+import com.qualcomm.robotcore.hardware.configuration.typecontainers.MotorConfigurationType;
+
+public class AutopilotSimMotor implements DcMotor {
+
+    private String deviceName;
+
+    private int position;
+    private double power;
+
+    private Direction direction = Direction.FORWARD;
+    private RunMode mode = RunMode.RUN_WITHOUT_ENCODER;
+    private ZeroPowerBehavior zeroPowerBehavior = ZeroPowerBehavior.BRAKE;
+
+    public AutopilotSimMotor(String deviceName) {
+        this.deviceName = deviceName;
+    }
+
+    public AutopilotSimMotor() {
+        this("AutopilotSimMotor");
+    }
+
+    public int getCurrentPosition() {
+        return position;
+    }
+
+    public void setCurrentPosition(int position) {
+        this.position = position;
+    }
+
+    public void addTicks(int ticks) {
+        position += ticks;
+    }
+
+    public void setPower(double power) {
+        this.power = power;
+    }
+
+    public double getPower() {
+        return power;
+    }
+
+    public void setDirection(Direction direction) {
+        this.direction = direction;
+    }
+
+    public Direction getDirection() {
+        return direction;
+    }
+
+    public void setMode(RunMode mode) {
+        if (mode == RunMode.STOP_AND_RESET_ENCODER) {
+            position = 0;
+        }
+        this.mode = mode;
+    }
+
+    public RunMode getMode() {
+        return mode;
+    }
+
+    public void setZeroPowerBehavior(ZeroPowerBehavior zeroPowerBehavior) {
+        this.zeroPowerBehavior = zeroPowerBehavior;
+    }
+
+    public ZeroPowerBehavior getZeroPowerBehavior() {
+        return zeroPowerBehavior;
+    }
+
+    public MotorConfigurationType getMotorType() {
+        return MotorConfigurationType.getUnspecifiedMotorType();
+    }
+
+    public void setMotorType(MotorConfigurationType motorType) {}
+
+    public DcMotorController getController() {
+        return null;
+    }
+
+    public int getPortNumber() {
+        return 0;
+    }
+
+    @Deprecated
+    public void setPowerFloat() {}
+
+    public boolean getPowerFloat() {
+        return false;
+    }
+
+    public void setTargetPosition(int position) {}
+
+    public int getTargetPosition() {
+        return 0;
+    }
+
+    public boolean isBusy() {
+        return false;
+    }
+
+    public Manufacturer getManufacturer() {
+        return Manufacturer.Other;
+    }
+
+    public String getDeviceName() {
+        return deviceName;
+    }
+
+    public String getConnectionInfo() {
+        return "";
+    }
+
+    public int getVersion() {
+        return 1;
+    }
+
+    public void resetDeviceConfigurationForOpMode() {}
+
+    public void close() {}
+
+}
@@ -0,0 +1,158 @@
+package com.evolutionftc.autopilot;
+
+
+// Copyright (c) 2016-2020 Aedan Cullen and/or Evolution Robotics.
+
+
+// Telemetry sink for running the autopilot off the robot.
+// Keeps the items of the last update() so a simulation can inspect them, and optionally
+// echoes each update to a stream. Lines, actions and the log are accepted and dropped.
+
+import org.firstinspires.ftc.robotcore.external.Func;
+import org.firstinspires.ftc.robotcore.external.Telemetry;
+
+import java.io.PrintStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class AutopilotSimTelemetry implements Telemetry {
+
+    private Map<String, Object> pending = new LinkedHashMap<String, Object>();
+    private Map<String, Object> published = new LinkedHashMap<String, Object>();
+
+    private PrintStream echo;
+    private int nUpdates;
+
+    private boolean autoClear = true;
+    private int msTransmissionInterval = 250;
+    private String itemSeparator = " | ";
+    private String captionValueSeparator = " : ";
+
+    public AutopilotSimTelemetry() {}
+
+    public AutopilotSimTelemetry(PrintStream echo) {
+        this.echo = echo;
+    }
+
+    // Value of an item as of the last update(), or null
+    public String getPublished(String caption) {
+        Object value = published.get(caption);
+        return value == null ? null : value.toString();
+    }
+
+    public int getUpdateCount() {
+        return nUpdates;
+    }
+
+    public Item addData(String caption, String format, Object... args) {
+        pending.put(caption, String.format(format, args));
+        return null;
+    }
+
+    public Item addData(String caption, Object value) {
+        pending.put(caption, value);
+        return null;
+    }
+
+    public <T> Item addData(String caption, Func<T> valueProducer) {
+        pending.put(caption, valueProducer.value());
+        return null;
+    }
+
+    public <T> Item addData(String caption, String format, Func<T> valueProducer) {
+        pending.put(caption, String.format(format, valueProducer.value()));
+        return null;
+    }
+
+    public boolean removeItem(Item item) {
+        return false;
+    }
+
+    public void clear() {
+        pending.clear();
+    }
+
+    public void clearAll() {
+        pending.clear();
+        published.clear();
+    }
+
+    public Object addAction(Runnable action) {
+        return action;
+    }
+
+    public boolean removeAction(Object token) {
+        return false;
+    }
+
+    public void speak(String text) {}
+
+    public void speak(String text, String languageCode, String countryCode) {}
+
+    public boolean update() {
+        published.clear();
+        published.putAll(pending);
+        if (autoClear) {
+            pending.clear();
+        }
+        nUpdates++;
+
+        if (echo != null) {
+            for (Map.Entry<String, Object> item : published.entrySet()) {
+                echo.println(item.getKey() + captionValueSeparator + item.getValue());
+            }
+        }
+        return true;
+    }
+
+    public Line addLine() {
+        return null;
+    }
+
+    public Line addLine(String lineCaption) {
+        return null;
+    }
+
+    public boolean removeLine(Line line) {
+        return false;
+    }
+
+    public boolean isAutoClear() {
+        return autoClear;
+    }
+
+    public void setAutoClear(boolean autoClear) {
+        this.autoClear = autoClear;
+    }
+
+    public int getMsTransmissionInterval() {
+        return msTransmissionInterval;
+    }
+
+    public void setMsTransmissionInterval(int msTransmissionInterval) {
+        this.msTransmissionInterval = msTransmissionInterval;
+    }
+
+    public String getItemSeparator() {
+        return itemSeparator;
+    }
+
+    public void setItemSeparator(String itemSeparator) {
+        this.itemSeparator = itemSeparator;
+    }
+
+    public String getCaptionValueSeparator() {
+        return captionValueSeparator;
+    }
+
+    public void setCaptionValueSeparator(String captionValueSeparator) {
+        this.captionValueSeparator = captionValueSeparator;
+    }
+
+    public void setDisplayFormat(DisplayFormat displayFormat) {}
+
+    public Log log() {
+        return null;
+    }
+
+}
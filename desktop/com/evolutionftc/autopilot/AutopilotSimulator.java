@@ -0,0 +1,175 @@
+package com.evolutionftc.autopilot;
+
+
+// Copyright (c) 2016-2020 Aedan Cullen and/or Evolution Robotics.
+
+
+// Headless simulation runtime.
+// Steps an AutopilotSystem against a simple holonomic robot model on simulated time:
+// each tick() runs systemTick(), applies the returned [y, x, h] powers for one tick
+// period, and moves the stand-in encoders and IMU to match. Nothing ever sleeps, so a
+// whole routine runs as fast as the CPU allows; the system is given a virtual clock
+// that advances one tick period per tick, so anything timed sees simulated time.
+//
+// Build the tracker on AutopilotSimMotors (and an AutopilotSimIMU) as on the robot,
+// then describe where each encoder sits with addOdometer() so the counts it sees are
+// consistent with the robot's motion.
+//
+// This class, the stand-in hardware it drives, AutopilotReplay and AutopilotAutotuner live in
+// the desktop/ source root so they never ship in the robot app: build it with the main
+// autopilot sources on one source path and the FTC SDK jars on the classpath.
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class AutopilotSimulator {
+
+    private static class Odometer {
+        AutopilotSimMotor motor;
+        double x;
+        double y;
+        double directionX;
+        double directionY;
+        double ticksPerUnit;
+        double travel;
+    }
+
+    private AutopilotSystem system;
+    private double secondsPerTick;
+
+    private List<Odometer> odometers = new ArrayList<Odometer>();
+    private AutopilotSimIMU imu;
+
+    // Robot speed at full power, and how quickly it responds to a new command
+    private double unitsPerSecond = 40;
+    private double radiansPerSecond = 4;
+    private double responseTime = 0.1;
+
+    private double[] truePosition = new double[3];
+    private double trueHeading;
+
+    private double velocityX;
+    private double velocityY;
+    private double velocityH;
+
+    private long nTicks;
+
+    private AutopilotSimClock clock = new AutopilotSimClock();
+
+    private double[] command = new double[3];
+
+    public AutopilotSimulator(AutopilotSystem system, double secondsPerTick) {
+        this.system = system;
+        this.secondsPerTick = secondsPerTick;
+        system.setClock(clock);
+    }
+
+    public void setRobotLimits(double unitsPerSecond, double radiansPerSecond, double responseTime) {
+        this.unitsPerSecond = unitsPerSecond;
+        this.radiansPerSecond = radiansPerSecond;
+        this.responseTime = responseTime;
+    }
+
+    //
+    // x, y: position of the encoder wheel relative to the robot center
+    // directionX, directionY: unit vector (in the robot frame) along which the wheel counts up
+    //
+    public void addOdometer(AutopilotSimMotor motor, double x, double y, double directionX, double directionY, double ticksPerUnit) {
+        Odometer odometer = new Odometer();
+        odometer.motor = motor;
+        odometer.x = x;
+        odometer.y = y;
+        odometer.directionX = directionX;
+        odometer.directionY = directionY;
+        odometer.ticksPerUnit = ticksPerUnit;
+        odometer.travel = motor.getCurrentPosition() / ticksPerUnit;
+        odometers.add(odometer);
+    }
+
+    public void setImu(AutopilotSimIMU imu) {
+        this.imu = imu;
+        imu.setHeading(trueHeading);
+    }
+
+    // Place the simulated robot; the tracker is not touched
+    public void setTruePose(double x, double y, double heading) {
+        truePosition[0] = x;
+        truePosition[1] = y;
+        trueHeading = AutopilotPlanarPose.wrapHeading(heading);
+        if (imu != null) {
+            imu.setHeading(trueHeading);
+        }
+    }
+
+    public double[] getTruePosition() {
+        return truePosition;
+    }
+
+    public double getTrueHeading() {
+        return trueHeading;
+    }
+
+    public long getTickCount() {
+        return nTicks;
+    }
+
+    public double getElapsedSeconds() {
+        return nTicks * secondsPerTick;
+    }
+
+    public AutopilotSimClock getClock() {
+        return clock;
+    }
+
+    public AutopilotSystem getSystem() {
+        return system;
+    }
+
+    // Returns the command applied, in an array reused by the next tick
+    public double[] tick() {
+        double[] yxh = system.systemTick(command);
+        move(yxh[1], yxh[0], yxh[2]);
+        nTicks++;
+        clock.advance(secondsPerTick);
+        return yxh;
+    }
+
+    // Tick until the path completes; returns the number of ticks taken, or -1 if maxTicks ran out first
+    public long runPath(long maxTicks) {
+        long start = nTicks;
+        while (nTicks - start < maxTicks) {
+            tick();
+            if (system.isPathComplete()) {
+                return nTicks - start;
+            }
+        }
+        return -1;
+    }
+
+    private void move(double powerX, double powerY, double powerH) {
+        double response = Math.min(1.0, secondsPerTick / responseTime);
+        velocityX += ((powerX * unitsPerSecond) - velocityX) * response;
+        velocityY += ((powerY * unitsPerSecond) - velocityY) * response;
+        velocityH += ((powerH * radiansPerSecond) - velocityH) * response;
+
+        double dx = velocityX * secondsPerTick;
+        double dy = velocityY * secondsPerTick;
+        double dh = velocityH * secondsPerTick;
+
+        // Body-frame step, applied at the midpoint heading
+        AutopilotPlanarPose.translate(truePosition, dx, dy, 0, trueHeading + (dh / 2));
+        trueHeading = AutopilotPlanarPose.wrapHeading(trueHeading + dh);
+
+        for (int i = 0; i < odometers.size(); i++) {
+            Odometer odometer = odometers.get(i);
+            // Wheel velocity is the body velocity plus rotation about the center, along the wheel direction
+            odometer.travel += (odometer.directionX * (dx - (dh * odometer.y))) + (odometer.directionY * (dy + (dh * odometer.x)));
+            odometer.motor.setCurrentPosition((int)Math.round(odometer.travel * odometer.ticksPerUnit));
+        }
+
+        if (imu != null) {
+            imu.setHeading(trueHeading);
+        }
+    }
+
+}
@@ -0,0 +1,53 @@
+
+# Converts a flight recording (AutopilotFlightRecorder.writeTo) to CSV for a spreadsheet or plotting.
+# Usage: python3 flightlog.py flight.bin [flight.csv]
+#
+# Pull the recording off the phone with adb pull, from wherever the OpMode wrote it.
+
+import os
+import struct
+import sys
+
+MAGIC = 0x41504652
+VERSION = 1
+STATUS_NAMES = ["running", "stopped"]
+
+
+def read_recording(fn):
+    with open(fn, "rb") as f:
+        data = f.read()
+    magic, version, n_encoders, n_ticks = struct.unpack_from(">iiii", data, 0)
+    if magic != MAGIC:
+        raise ValueError("%s is not a flight recording" % fn)
+    if version != VERSION:
+        raise ValueError("%s is version %d, expected %d" % (fn, version, VERSION))
+    tick = struct.Struct(">q%dq7dib" % n_encoders)
+    ticks = []
+    for i in range(n_ticks):
+        ticks.append(tick.unpack_from(data, 16 + i * tick.size))
+    return n_encoders, ticks
+
+
+def main(argv):
+    if len(argv) < 2:
+        print("usage: flightlog.py flight.bin [flight.csv]")
+        return 2
+    in_fn = argv[1]
+    out_fn = argv[2] if len(argv) > 2 else os.path.splitext(in_fn)[0] + ".csv"
+    n_encoders, ticks = read_recording(in_fn)
+    columns = (["seconds"] + ["enc%d" % i for i in range(n_encoders)] +
+               ["heading", "x", "y", "h", "cmdy", "cmdx", "cmdh", "segment", "status"])
+    with open(out_fn, "w") as f:
+        f.write(",".join(columns) + "\n")
+        for t in ticks:
+            fields = ["%.6f" % (t[0] / 1e9)] + [str(v) for v in t[1:1 + n_encoders]]
+            fields += [repr(v) for v in t[1 + n_encoders:-2]]
+            status = t[-1]
+            fields += [str(t[-2]), STATUS_NAMES[status] if status < len(STATUS_NAMES) else str(status)]
+            f.write(",".join(fields) + "\n")
+    print("Wrote %d ticks to %s" % (len(ticks), out_fn))
+    return 0
+
+
+if __name__ == "__main__":
+    sys.exit(main(sys.argv))
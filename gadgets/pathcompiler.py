@@ -0,0 +1,170 @@
+
+# Compiles an autopilot path CSV into the binary format AutopilotPath loads directly.
+# Usage: python3 pathcompiler.py mypath.csv [mypath_compiled.bin]
+#
+# Put the output in res/raw next to the CSV. AutopilotPath("mypath", ...) picks up
+# mypath_compiled in preference to mypath, and falls back to the CSV when it is absent.
+# Add aaptOptions { noCompress "bin" } to the app's build.gradle so the file can be
+# memory-mapped; otherwise it is read in one go, which is still fast.
+
+import os
+import struct
+import sys
+
+REQUIRED_COLUMNS = ["id", "success", "fail", "targetx", "targety", "targeth",
+                    "xygain", "hgain", "xymax", "xymin", "hmax", "useh"]
+OPTIONAL_COLUMNS = ["usexy", "fullstop", "diffmode"]
+
+MAGIC = b"APTH"
+VERSION = 1
+START_ID = "__start__"
+END_INDEX = -1
+
+NUMBER_COLUMNS = ["targetx", "targety", "targeth", "xygain", "hgain", "xymax", "xymin", "hmax"]
+FLAG_COLUMNS = ["useh", "usexy", "fullstop", "diffmode"]
+
+
+class PathError(Exception):
+    pass
+
+
+def parse_bool(text, line_no):
+    # Same rules as AutopilotCsvTokenizer
+    word = text.strip().lower()
+    if word in ("true", "1"):
+        return True
+    if word in ("false", "0"):
+        return False
+    raise PathError("line %d: expected true or false, found '%s'" % (line_no, text.strip()))
+
+
+def read_csv(fn):
+    with open(fn, "r") as f:
+        lines = f.read().splitlines()
+    columns = [c.strip().lower() for c in lines[0].split(",")] if lines else []
+    for c in columns:
+        if c not in REQUIRED_COLUMNS + OPTIONAL_COLUMNS or columns.count(c) > 1:
+            raise PathError("Header line in CSV has unknown or repeated column '%s', is it of the correct format?" % c)
+    for c in REQUIRED_COLUMNS:
+        if c not in columns:
+            raise PathError("Header line in CSV is missing column '%s', is it of the correct format?" % c)
+
+    segments = []
+    for line_no, line in enumerate(lines[1:], start=2):
+        if not line.strip():
+            continue
+        fields = [f.strip() for f in line.split(",")]
+        if len(fields) != len(columns):
+            raise PathError("line %d: expected %d columns, found %d" % (line_no, len(columns), len(fields)))
+        row = dict(zip(columns, fields))
+        try:
+            numbers = [float(row[c]) for c in NUMBER_COLUMNS]
+        except ValueError as e:
+            raise PathError("line %d: %s" % (line_no, e))
+        flags = [parse_bool(row[c], line_no) if c in row else False for c in FLAG_COLUMNS]
+        segments.append((row["id"], row["success"], row["fail"], numbers, flags))
+    return segments
+
+
+def is_terminal_id(segment_id):
+    # Matches AutopilotPath: an empty reference or one of the form __name__ ends the path
+    return segment_id == "" or (len(segment_id) > 4 and segment_id.startswith("__") and segment_id.endswith("__"))
+
+
+def compile_graph(segments):
+    index = {}
+    for i, segment in enumerate(segments):
+        if segment[0] in index:
+            raise PathError("Segment '%s' appears more than once" % segment[0])
+        index[segment[0]] = i
+    if START_ID not in index:
+        raise PathError("Path has no __start__ segment")
+
+    def resolve(segment, target, which):
+        if target in index:
+            return index[target]
+        if is_terminal_id(target):
+            return END_INDEX
+        raise PathError("Segment '%s' has %s segment '%s', which does not exist" % (segment[0], which, target))
+
+    success = [resolve(s, s[1], "success") for s in segments]
+    fail = [resolve(s, s[2], "fail") for s in segments]
+
+    # Every segment reachable from __start__ needs a way to the end of the path
+    incoming = [[] for _ in segments]
+    for i in range(len(segments)):
+        for j in (success[i], fail[i]):
+            if j != END_INDEX:
+                incoming[j].append(i)
+    can_exit = [success[i] == END_INDEX or fail[i] == END_INDEX for i in range(len(segments))]
+    queue = [i for i in range(len(segments)) if can_exit[i]]
+    while queue:
+        i = queue.pop()
+        for j in incoming[i]:
+            if not can_exit[j]:
+                can_exit[j] = True
+                queue.append(j)
+
+    reached = {index[START_ID]}
+    queue = [index[START_ID]]
+    while queue:
+        i = queue.pop()
+        if not can_exit[i]:
+            raise PathError("Segment '%s' is part of a loop with no way to the end of the path" % segments[i][0])
+        for j in (success[i], fail[i]):
+            if j != END_INDEX and j not in reached:
+                reached.add(j)
+                queue.append(j)
+
+    return index[START_ID], success, fail
+
+
+def pack_string(text):
+    data = text.encode("utf-8")
+    if len(data) > 0xFFFF:
+        raise PathError("Segment id '%s...' is too long" % text[:16])
+    return struct.pack(">H", len(data)) + data
+
+
+def write_compiled(fn, segments, start, success, fail):
+    n = len(segments)
+    out = bytearray()
+    out += MAGIC
+    out += struct.pack(">iii", VERSION, n, start)
+    out += struct.pack(">%di" % n, *success)
+    out += struct.pack(">%di" % n, *fail)
+    numbers = []
+    for segment in segments:
+        numbers.extend(segment[3])
+    out += struct.pack(">%dd" % len(numbers), *numbers)
+    for segment in segments:
+        flags = 0
+        for bit, value in enumerate(segment[4]):
+            if value:
+                flags |= 1 << bit
+        out.append(flags)
+    for segment in segments:
+        out += pack_string(segment[0]) + pack_string(segment[1]) + pack_string(segment[2])
+    with open(fn, "wb") as f:
+        f.write(out)
+
+
+def main(argv):
+    if len(argv) < 2:
+        print("usage: pathcompiler.py input.csv [output.bin]")
+        return 2
+    in_fn = argv[1]
+    out_fn = argv[2] if len(argv) > 2 else os.path.splitext(in_fn)[0] + "_compiled.bin"
+    try:
+        segments = read_csv(in_fn)
+        start, success, fail = compile_graph(segments)
+    except PathError as e:
+        print("%s: %s" % (in_fn, e))
+        return 1
+    write_compiled(out_fn, segments, start, success, fail)
+    print("Compiled %d segments to %s" % (len(segments), out_fn))
+    return 0
+
+
+if __name__ == "__main__":
+    sys.exit(main(sys.argv))
@@ -0,0 +1,247 @@
+
+# Turns a handful of control points into a smooth autopilot path.
+# Usage: python3 splinecompiler.py points.csv out.csv [options]    (see --help)
+#
+# points.csv has a header and columns x,y and optionally h (heading in radians at that point).
+# The points are joined by a natural cubic spline (default) or quintic Hermite spline (--quintic),
+# resampled every --spacing units of arc length, and written as a chain of segments with
+# usexy=true and fullstop=false, so the robot runs through them without stopping; only the
+# last segment stops. Each segment's xymax comes from a velocity profile limited by
+# --accel along the path and --lateral-accel around curves.
+#
+# Add --binary to also write the compiled form (via pathcompiler.py) for res/raw.
+
+import argparse
+import math
+import os
+import sys
+
+import pathcompiler
+
+SAMPLES_PER_PIECE = 200
+
+
+def read_points(fn):
+    with open(fn, "r") as f:
+        lines = [line.strip() for line in f.read().splitlines() if line.strip()]
+    columns = [c.strip().lower() for c in lines[0].split(",")]
+    if "x" not in columns or "y" not in columns:
+        raise pathcompiler.PathError("Header line must have x and y columns")
+    points = []
+    headings = []
+    for line_no, line in enumerate(lines[1:], start=2):
+        row = dict(zip(columns, [v.strip() for v in line.split(",")]))
+        try:
+            points.append((float(row["x"]), float(row["y"])))
+            if "h" in row:
+                headings.append(float(row["h"]))
+        except (KeyError, ValueError) as e:
+            raise pathcompiler.PathError("line %d: %s" % (line_no, e))
+    if len(points) < 2:
+        raise pathcompiler.PathError("Need at least two points")
+    return points, (headings if "h" in columns else None)
+
+
+def natural_cubic_slopes(t, v):
+    # First derivatives at the knots of the natural cubic spline through (t, v)
+    n = len(t)
+    h = [t[i + 1] - t[i] for i in range(n - 1)]
+    # Tridiagonal system for the second derivatives m, with m[0] = m[n-1] = 0
+    a = [0.0] * n
+    b = [1.0] * n
+    c = [0.0] * n
+    d = [0.0] * n
+    for i in range(1, n - 1):
+        a[i] = h[i - 1]
+        b[i] = 2 * (h[i - 1] + h[i])
+        c[i] = h[i]
+        d[i] = 6 * (((v[i + 1] - v[i]) / h[i]) - ((v[i] - v[i - 1]) / h[i - 1]))
+    for i in range(1, n):
+        w = a[i] / b[i - 1]
+        b[i] -= w * c[i - 1]
+        d[i] -= w * d[i - 1]
+    m = [0.0] * n
+    m[n - 1] = d[n - 1] / b[n - 1]
+    for i in range(n - 2, -1, -1):
+        m[i] = (d[i] - c[i] * m[i + 1]) / b[i]
+    slopes = []
+    for i in range(n):
+        if i < n - 1:
+            slopes.append(((v[i + 1] - v[i]) / h[i]) - (h[i] * (2 * m[i] + m[i + 1]) / 6))
+        else:
+            slopes.append(((v[i] - v[i - 1]) / h[i - 1]) + (h[i - 1] * (m[i - 1] + 2 * m[i]) / 6))
+    return slopes, m
+
+
+def catmull_rom_slopes(t, v):
+    n = len(t)
+    slopes = []
+    for i in range(n):
+        lo, hi = max(i - 1, 0), min(i + 1, n - 1)
+        slopes.append((v[hi] - v[lo]) / (t[hi] - t[lo]))
+    return slopes
+
+
+def hermite(p0, p1, d0, d1, a0, a1, h, u, quintic):
+    # Value, first and second derivative (with respect to the chord parameter) at u in [0, 1]
+    if quintic:
+        basis = [1 - 10*u**3 + 15*u**4 - 6*u**5, u - 6*u**3 + 8*u**4 - 3*u**5, 0.5*u**2 - 1.5*u**3 + 1.5*u**4 - 0.5*u**5,
+                 0.5*u**3 - u**4 + 0.5*u**5, -4*u**3 + 7*u**4 - 3*u**5, 10*u**3 - 15*u**4 + 6*u**5]
+        dbasis = [-30*u**2 + 60*u**3 - 30*u**4, 1 - 18*u**2 + 32*u**3 - 15*u**4, u - 4.5*u**2 + 6*u**3 - 2.5*u**4,
+                  1.5*u**2 - 4*u**3 + 2.5*u**4, -12*u**2 + 28*u**3 - 15*u**4, 30*u**2 - 60*u**3 + 30*u**4]
+        ddbasis = [-60*u + 180*u**2 - 120*u**3, -36*u + 96*u**2 - 60*u**3, 1 - 9*u + 18*u**2 - 10*u**3,
+                   3*u - 12*u**2 + 10*u**3, -24*u + 84*u**2 - 60*u**3, 60*u - 180*u**2 + 120*u**3]
+        coeffs = [p0, d0 * h, a0 * h * h, a1 * h * h, d1 * h, p1]
+    else:
+        basis = [2*u**3 - 3*u**2 + 1, u**3 - 2*u**2 + u, u**3 - u**2, -2*u**3 + 3*u**2]
+        dbasis = [6*u**2 - 6*u, 3*u**2 - 4*u + 1, 3*u**2 - 2*u, -6*u**2 + 6*u]
+        ddbasis = [12*u - 6, 6*u - 4, 6*u - 2, -12*u + 6]
+        coeffs = [p0, d0 * h, d1 * h, p1]
+    value = sum(c * b for c, b in zip(coeffs, basis))
+    first = sum(c * b for c, b in zip(coeffs, dbasis)) / h
+    second = sum(c * b for c, b in zip(coeffs, ddbasis)) / (h * h)
+    return value, first, second
+
+
+def sample_spline(points, quintic):
+    # Dense samples of (arc length, x, y, curvature), plus the arc length at each control point
+    t = [0.0]
+    for i in range(1, len(points)):
+        chord = math.hypot(points[i][0] - points[i - 1][0], points[i][1] - points[i - 1][1])
+        if chord == 0:
+            raise pathcompiler.PathError("Control points %d and %d are the same" % (i, i + 1))
+        t.append(t[-1] + chord)
+    xs = [p[0] for p in points]
+    ys = [p[1] for p in points]
+    if quintic:
+        dx, dy = catmull_rom_slopes(t, xs), catmull_rom_slopes(t, ys)
+        ax, ay = [0.0] * len(points), [0.0] * len(points)
+    else:
+        (dx, ax), (dy, ay) = natural_cubic_slopes(t, xs), natural_cubic_slopes(t, ys)
+
+    samples = []
+    knot_lengths = [0.0]
+    s = 0.0
+    last = None
+    for i in range(len(points) - 1):
+        h = t[i + 1] - t[i]
+        for k in range(SAMPLES_PER_PIECE + (1 if i == len(points) - 2 else 0)):
+            u = k / SAMPLES_PER_PIECE
+            x, x1, x2 = hermite(xs[i], xs[i + 1], dx[i], dx[i + 1], ax[i], ax[i + 1], h, u, quintic)
+            y, y1, y2 = hermite(ys[i], ys[i + 1], dy[i], dy[i + 1], ay[i], ay[i + 1], h, u, quintic)
+            if last is not None:
+                s += math.hypot(x - last[0], y - last[1])
+            speed = math.hypot(x1, y1)
+            curvature = abs(x1 * y2 - y1 * x2) / speed**3 if speed > 0 else 0.0
+            samples.append((s, x, y, curvature))
+            last = (x, y)
+        knot_lengths.append(s + math.hypot(xs[i + 1] - last[0], ys[i + 1] - last[1]))
+    return samples, knot_lengths
+
+
+def resample(samples, spacing):
+    # Points every `spacing` of arc length, each with the highest curvature since the previous one
+    total = samples[-1][0]
+    n = max(1, int(math.ceil(total / spacing)))
+    out = []
+    j = 0
+    for k in range(n + 1):
+        s = total * k / n
+        peak = 0.0
+        while j < len(samples) - 1 and samples[j + 1][0] < s:
+            j += 1
+            peak = max(peak, samples[j][3])
+        s0, x0, y0, c0 = samples[j]
+        s1, x1, y1, c1 = samples[min(j + 1, len(samples) - 1)]
+        f = 0.0 if s1 == s0 else (s - s0) / (s1 - s0)
+        out.append((s, x0 + f * (x1 - x0), y0 + f * (y1 - y0), max(peak, c0, c1)))
+    return out
+
+
+def velocity_profile(points, top_speed, accel, lateral_accel):
+    speeds = []
+    for s, x, y, curvature in points:
+        limit = top_speed if curvature == 0 else min(top_speed, math.sqrt(lateral_accel / curvature))
+        speeds.append(limit)
+    speeds[0] = 0.0
+    speeds[-1] = 0.0
+    for k in range(1, len(points)):
+        ds = points[k][0] - points[k - 1][0]
+        speeds[k] = min(speeds[k], math.sqrt(speeds[k - 1]**2 + 2 * accel * ds))
+    for k in range(len(points) - 2, -1, -1):
+        ds = points[k + 1][0] - points[k][0]
+        speeds[k] = min(speeds[k], math.sqrt(speeds[k + 1]**2 + 2 * accel * ds))
+    return speeds
+
+
+def heading_at(s, knot_lengths, headings):
+    for i in range(len(knot_lengths) - 1):
+        if s <= knot_lengths[i + 1] or i == len(knot_lengths) - 2:
+            span = knot_lengths[i + 1] - knot_lengths[i]
+            f = 0.0 if span == 0 else min(1.0, max(0.0, (s - knot_lengths[i]) / span))
+            return headings[i] + f * (headings[i + 1] - headings[i])
+
+
+def build_segments(points, speeds, knot_lengths, headings, args):
+    segments = []
+    n = len(points) - 1
+    for k in range(1, n + 1):
+        s, x, y, curvature = points[k]
+        segment_id = pathcompiler.START_ID if k == 1 else "s%d" % k
+        success = "__end__" if k == n else "s%d" % (k + 1)
+        # Power to hold on the way to this point: the profile speed midway, but never below xymin
+        power = min(args.max_power, ((speeds[k - 1] + speeds[k]) / 2) / args.speed)
+        xymax = max(power, args.xymin)
+        h = heading_at(s, knot_lengths, headings) if headings else 0.0
+        numbers = [x, y, h, args.xygain, args.hgain, xymax, args.xymin, args.hmax]
+        flags = [headings is not None, True, k == n, False]
+        segments.append((segment_id, success, "__end__", numbers, flags))
+    return segments
+
+
+def write_csv(fn, segments):
+    columns = pathcompiler.REQUIRED_COLUMNS + pathcompiler.OPTIONAL_COLUMNS
+    with open(fn, "w") as f:
+        f.write(",".join(columns) + "\n")
+        for segment_id, success, fail, numbers, flags in segments:
+            fields = [segment_id, success, fail] + ["%.6g" % v for v in numbers]
+            fields += ["true" if flag else "false" for flag in flags]
+            f.write(",".join(fields) + "\n")
+
+
+def main(argv):
+    parser = argparse.ArgumentParser(description="Compile spline control points into an autopilot path")
+    parser.add_argument("points")
+    parser.add_argument("output")
+    parser.add_argument("--quintic", action="store_true", help="quintic Hermite instead of natural cubic spline")
+    parser.add_argument("--spacing", type=float, default=3.0, help="arc length between segments (units)")
+    parser.add_argument("--speed", type=float, default=40.0, help="robot speed at full power (units/s)")
+    parser.add_argument("--max-power", type=float, default=0.8)
+    parser.add_argument("--accel", type=float, default=60.0, help="along-path acceleration limit (units/s^2)")
+    parser.add_argument("--lateral-accel", type=float, default=60.0, help="centripetal acceleration limit (units/s^2)")
+    parser.add_argument("--xygain", type=float, default=1.0, help="high, so each short segment runs at its xymax")
+    parser.add_argument("--xymin", type=float, default=0.1)
+    parser.add_argument("--hgain", type=float, default=1.0)
+    parser.add_argument("--hmax", type=float, default=0.5)
+    parser.add_argument("--binary", action="store_true", help="also write <output>_compiled.bin")
+    args = parser.parse_args(argv[1:])
+
+    try:
+        control, headings = read_points(args.points)
+        samples, knot_lengths = sample_spline(control, args.quintic)
+        points = resample(samples, args.spacing)
+        speeds = velocity_profile(points, args.speed * args.max_power, args.accel, args.lateral_accel)
+        segments = build_segments(points, speeds, knot_lengths, headings, args)
+        write_csv(args.output, segments)
+        if args.binary:
+            start, success, fail = pathcompiler.compile_graph(segments)
+            pathcompiler.write_compiled(os.path.splitext(args.output)[0] + "_compiled.bin", segments, start, success, fail)
+    except pathcompiler.PathError as e:
+        print("%s: %s" % (args.points, e))
+        return 1
+    print("Wrote %d segments over %.1f units to %s" % (len(segments), points[-1][0], args.output))
+    return 0
+
+
+if __name__ == "__main__":
+    sys.exit(main(sys.argv))
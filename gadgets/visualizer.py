@@ -1,10 +1,18 @@
 
 # Extremely quick+basic tool for drawing the robot location graphically.
 # Ensure adb is in the PATH.
+#
+# Usage: python3 visualizer.py               reads the logcat broadcast
+#        python3 visualizer.py host[:port]   reads the binary stream (AutopilotSystem.enableVisualizerStream)
+# For the stream over USB, first run: adb forward tcp:7356 tcp:7356  and use localhost.
 
 import turtle as t
 import math
+import socket
 import subprocess
+import sys
+
+import visualizer_client
 
 FIELD_FN = "field-grid-basic.gif"
 FIELD_X = 500
@@ -66,24 +74,51 @@ def update(status, x, y, h):
     last_status = status
     t.update()
 
-subprocess.call(["adb", "logcat", "-c"])
-logcat = subprocess.Popen(["adb", "logcat"], stdout=subprocess.PIPE,stderr=subprocess.STDOUT).stdout
+def start_logcat():
+    subprocess.call(["adb", "logcat", "-c"])
+    logcat = subprocess.Popen(["adb", "logcat"], stdout=subprocess.PIPE,stderr=subprocess.STDOUT).stdout
 
-def check_logcat():
-    global logcat
+    def check_logcat():
+        line = logcat.readline()
+        if not line:
+            return
+        if TAG in line:
+            line = line[line.find(TAG):]
+            line = line.rstrip(b" \r\n")
+            line = line.split(b" ")[1]
+            status, x, y, h = line.split(b",")
+            update(status, float(x),float(y),float(h))
 
-    line = logcat.readline()
-    if not line:
-        return
-    if TAG in line:
-        line = line[line.find(TAG):]
-        line = line.rstrip(b" \r\n")
-        line = line.split(b" ")[1]
-        status, x, y, h = line.split(b",")
-        update(status, float(x),float(y),float(h))
+        t.ontimer(check_logcat, 15)
 
+    print("Connected to logcat, press Ctrl-C to quit")
     t.ontimer(check_logcat, 15)
 
-print("Connected to logcat, press Ctrl-C to quit")
-t.ontimer(check_logcat, 15)
+def start_stream(argv):
+    host, port = visualizer_client.parse_address(argv)
+    sock = socket.create_connection((host, port))
+    sock.setblocking(False)
+    reader = visualizer_client.FrameReader()
+
+    def check_stream():
+        try:
+            data = sock.recv(65536)
+        except BlockingIOError:
+            data = None
+        if data == b"":
+            t.title(TITLE + b"stream closed")
+            return
+        if data:
+            # Draw every frame, so the full-rate trajectory is traced
+            for seq, seconds, status, x, y, h in reader.feed(data):
+                update(status, x, y, h)
+        t.ontimer(check_stream, 15)
+
+    print("Connected to %s:%d, press Ctrl-C to quit" % (host, port))
+    t.ontimer(check_stream, 15)
+
+if len(sys.argv) > 1:
+    start_stream(sys.argv)
+else:
+    start_logcat()
 t.mainloop()
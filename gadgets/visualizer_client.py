@@ -0,0 +1,85 @@
+
+# Minimal subscriber for the binary visualizer stream (AutopilotSystem.enableVisualizerStream).
+# Prints each frame, plus the frame rate and any gaps in the sequence numbers.
+# Usage: python3 visualizer_client.py [host[:port]]
+#
+# Over USB, first run: adb forward tcp:7356 tcp:7356
+# and connect to localhost (the default). Also useful as a loopback check of the stream
+# against the simulator running on the same machine.
+
+import socket
+import struct
+import sys
+import time
+
+DEFAULT_HOST = "localhost"
+DEFAULT_PORT = 7356
+
+FRAME = struct.Struct(">iiqfffb3x")
+FRAME_MAGIC = 0x41505646
+STATUS_NAMES = [b"running", b"stopped"]
+
+
+def parse_address(argv):
+    host, port = DEFAULT_HOST, DEFAULT_PORT
+    if len(argv) > 1:
+        host, _, port_text = argv[1].partition(":")
+        if port_text:
+            port = int(port_text)
+    return host, port
+
+
+class FrameReader:
+    # Splits the byte stream into frames; feed it whatever recv() returns
+
+    def __init__(self):
+        self.pending = b""
+
+    def feed(self, data):
+        self.pending += data
+        frames = []
+        n = len(self.pending) // FRAME.size
+        for i in range(n):
+            magic, seq, nanos, x, y, h, status = FRAME.unpack_from(self.pending, i * FRAME.size)
+            if magic != FRAME_MAGIC:
+                raise ValueError("bad frame magic 0x%08x, not a visualizer stream?" % magic)
+            name = STATUS_NAMES[status] if status < len(STATUS_NAMES) else b"unknown"
+            frames.append((seq, nanos / 1e9, name, x, y, h))
+        self.pending = self.pending[n * FRAME.size:]
+        return frames
+
+
+def main(argv):
+    host, port = parse_address(argv)
+    sock = socket.create_connection((host, port))
+    print("Connected to %s:%d, press Ctrl-C to quit" % (host, port))
+    reader = FrameReader()
+    last_seq = None
+    n_frames = 0
+    n_missed = 0
+    window_start = time.time()
+    try:
+        while True:
+            data = sock.recv(4096)
+            if not data:
+                print("Stream closed")
+                return 0
+            for seq, seconds, status, x, y, h in reader.feed(data):
+                if last_seq is not None and seq != last_seq + 1:
+                    n_missed += seq - last_seq - 1
+                last_seq = seq
+                n_frames += 1
+                print("%8d %10.3f %-8s %8.2f %8.2f %7.3f" % (seq, seconds, status.decode(), x, y, h))
+            now = time.time()
+            if now - window_start >= 1:
+                print("-- %.1f frames/s, %d missed" % (n_frames / (now - window_start), n_missed))
+                n_frames = 0
+                window_start = now
+    except KeyboardInterrupt:
+        return 0
+    finally:
+        sock.close()
+
+
+if __name__ == "__main__":
+    sys.exit(main(sys.argv))
@@ -0,0 +1,183 @@
+package com.evolutionftc.autopilot;
+
+
+// Copyright (c) 2016-2020 Aedan Cullen and/or Evolution Robotics.
+
+
+// Checks that the steady-state loop never allocates: with each tracker, a simulated system is
+// driven around a closed path, and the bytes allocated on this thread over many ticks (segment
+// transitions included) must be zero. Telemetry is paced out of the measured ticks, since
+// publishing it allocates in the SDK.
+//
+// This source root is built on the desktop, separately from the robot code: put it, desktop/
+// and the main autopilot sources on one source path, with JUnit 4, the FTC SDK jars (RobotCore,
+// Hardware) and android.jar on the classpath. It needs a JVM that reports per-thread
+// allocation (com.sun.management.ThreadMXBean), as HotSpot and OpenJ9 do.
+
+import com.qualcomm.robotcore.hardware.DcMotor;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.assertEquals;
+
+public class AutopilotAllocationTest {
+
+    private static final int WARMUP_TICKS = 2000;
+    private static final int MEASURED_TICKS = 5000;
+    private static final int MAX_WINDOWS = 5;
+
+    // A square that loops back to its start on success, so the path never runs out
+    private static final String PATH_CSV =
+            "id,success,fail,targetx,targety,targeth,xygain,hgain,xymax,xymin,hmax,useh\n" +
+            "__start__,b,__end__,24,0,0,0.05,1.0,0.8,0.1,0.5,true\n" +
+            "b,c,__end__,24,24,1.57,0.05,1.0,0.8,0.1,0.5,false\n" +
+            "c,d,__end__,0,24,3.14,0.05,1.0,0.8,0.1,0.5,true\n" +
+            "d,__start__,__end__,0,0,0,0.05,1.0,0.8,0.1,0.5,false\n";
+
+    private static final double TICKS_PER_UNIT = 1000;
+    private static final double X_RADIUS = 4;
+    private static final double Y_RADIUS = 7;
+
+    private AutopilotSimMotor[] motors = new AutopilotSimMotor[5];
+    private AutopilotSimIMU imu = new AutopilotSimIMU();
+
+    @Test
+    public void tripleOdoTickDoesNotAllocate() {
+        AutopilotSimulator simulator = simulate(new AutopilotTrackerTripleOdo(motor(0), motor(2), motor(3), X_RADIUS, Y_RADIUS, TICKS_PER_UNIT));
+        addXOdometer(simulator, 0, X_RADIUS);
+        addYOdometers(simulator);
+        assertTicksDoNotAllocate("TripleOdo", simulator);
+    }
+
+    @Test
+    public void quadOdoTickDoesNotAllocate() {
+        AutopilotSimulator simulator = simulate(new AutopilotTrackerQuadOdo(motor(0), motor(1), motor(2), motor(3), X_RADIUS, Y_RADIUS, TICKS_PER_UNIT));
+        addXOdometer(simulator, 0, X_RADIUS);
+        addXOdometer(simulator, 1, X_RADIUS);
+        addYOdometers(simulator);
+        assertTicksDoNotAllocate("QuadOdo", simulator);
+    }
+
+    @Test
+    public void quadFullOdoTickDoesNotAllocate() {
+        AutopilotSimulator simulator = simulate(new AutopilotTrackerQuadFullOdo(motor(0), motor(1), motor(2), motor(3), X_RADIUS, Y_RADIUS, TICKS_PER_UNIT));
+        addXOdometer(simulator, 0, X_RADIUS);
+        addXOdometer(simulator, 1, -X_RADIUS);
+        addYOdometers(simulator);
+        assertTicksDoNotAllocate("QuadFullOdo", simulator);
+    }
+
+    @Test
+    public void dualOdoTickDoesNotAllocate() {
+        AutopilotSimulator simulator = simulate(new AutopilotTrackerDualOdo(motor(0), motor(3), X_RADIUS, Y_RADIUS, TICKS_PER_UNIT, imu));
+        addXOdometer(simulator, 0, X_RADIUS);
+        simulator.addOdometer(motors[3], Y_RADIUS, 0, 0, 1, TICKS_PER_UNIT);
+        simulator.setImu(imu);
+        assertTicksDoNotAllocate("DualOdo", simulator);
+    }
+
+    @Test
+    public void encTickDoesNotAllocate() {
+        AutopilotSimulator simulator = simulate(new AutopilotTrackerEnc(motor(2), motor(3), TICKS_PER_UNIT, imu, 10));
+        addYOdometers(simulator);
+        simulator.setImu(imu);
+        assertTicksDoNotAllocate("Enc", simulator);
+    }
+
+    @Test
+    public void qp37iTickDoesNotAllocate() {
+        AutopilotSimulator simulator = simulate(new AutopilotTrackerQP37i(motor(0), motor(2), new double[] {2, 3, 0}, TICKS_PER_UNIT, imu, 10));
+        simulator.addOdometer(motors[0], 2, 3, 1, 0, TICKS_PER_UNIT);
+        simulator.addOdometer(motors[2], 2, 3, 0, 1, TICKS_PER_UNIT);
+        simulator.setImu(imu);
+        assertTicksDoNotAllocate("QP37i", simulator);
+    }
+
+    @Test
+    public void multiOdoTickDoesNotAllocate() {
+        double[][] geometry = {
+                {0, X_RADIUS, 1, 0},
+                {-Y_RADIUS, 0, 0, 1},
+                {Y_RADIUS, 0, 0, 1},
+                {0, -X_RADIUS, 1, 0}
+        };
+        DcMotor[] wheels = {motor(0), motor(2), motor(3), motor(4)};
+        AutopilotSimulator simulator = simulate(new AutopilotTrackerMultiOdo(wheels, geometry, TICKS_PER_UNIT));
+        addXOdometer(simulator, 0, X_RADIUS);
+        addYOdometers(simulator);
+        addXOdometer(simulator, 4, -X_RADIUS);
+        assertTicksDoNotAllocate("MultiOdo", simulator);
+    }
+
+    private AutopilotSimMotor motor(int i) {
+        motors[i] = new AutopilotSimMotor("encoder" + i);
+        return motors[i];
+    }
+
+    private void addXOdometer(AutopilotSimulator simulator, int i, double y) {
+        simulator.addOdometer(motors[i], 0, y, 1, 0, TICKS_PER_UNIT);
+    }
+
+    private void addYOdometers(AutopilotSimulator simulator) {
+        simulator.addOdometer(motors[2], -Y_RADIUS, 0, 0, 1, TICKS_PER_UNIT);
+        simulator.addOdometer(motors[3], Y_RADIUS, 0, 0, 1, TICKS_PER_UNIT);
+    }
+
+    private static AutopilotSimulator simulate(AutopilotTracker tracker) {
+        AutopilotSimTelemetry telemetry = new AutopilotSimTelemetry();
+        AutopilotSystem system = new AutopilotSystem(tracker, telemetry, null, false) {
+            public void onSegmentTransition(AutopilotSegment previous, AutopilotSegment next, boolean wasOkayToContinue) {
+                // The CSV leaves these unset
+                if (next != null) {
+                    next.useTranslation = true;
+                    next.fullStop = false;
+                }
+            }
+        };
+        system.host.setCountsToStable(5);
+        system.host.setNavigationUnitsToStable(1.0);
+        system.host.setOrientationUnitsToStable(0.05);
+        // Once before the measured ticks, then not again
+        system.setTelemetryInterval(Integer.MAX_VALUE);
+
+        byte[] csv = PATH_CSV.getBytes(Charset.forName("UTF-8"));
+        system.beginPathTravel(new AutopilotPath("allocation", telemetry, new ByteArrayInputStream(csv)));
+        return new AutopilotSimulator(system, 0.005);
+    }
+
+    private static void assertTicksDoNotAllocate(String trackerType, AutopilotSimulator simulator) {
+        Assume.assumeTrue("JVM does not report per-thread allocation", ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+
+        // Let the tracker, host and path settle into their steady state first
+        for (int i = 0; i < WARMUP_TICKS; i++) {
+            simulator.tick();
+        }
+
+        // With tiered compilation, HotSpot now and then charges a few bytes to this thread when a
+        // method changes tier. That happens once, not on every tick or transition, so the
+        // fewest bytes over a few windows is what has to be zero.
+        long fewest = Long.MAX_VALUE;
+        for (int window = 0; window < MAX_WINDOWS && fewest > 0; window++) {
+            // What reading the counter costs by itself, so only the ticks are counted
+            long overhead = threads.getThreadAllocatedBytes(thread);
+            overhead = threads.getThreadAllocatedBytes(thread) - overhead;
+
+            long before = threads.getThreadAllocatedBytes(thread);
+            for (int i = 0; i < MEASURED_TICKS; i++) {
+                simulator.tick();
+            }
+            long allocated = threads.getThreadAllocatedBytes(thread) - before - overhead;
+            fewest = Math.min(fewest, allocated);
+        }
+
+        assertEquals(trackerType + ": bytes allocated over " + MEASURED_TICKS + " ticks", 0, fewest);
+    }
+
+}